@@ -22,6 +22,10 @@ import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.warysecure.contactsaver.scanner.StatusChannel;
+
+import java.util.Locale;
+
 public class FloatingWindowService extends Service {
 
     private static final String CHANNEL_ID = "FloatingWindowChannel";
@@ -192,12 +196,17 @@ public class FloatingWindowService extends Service {
         statusText.setText("Stopped");
     }
 
-    public void updateStatus(String status) {
-        handler.post(() -> {
-            if (statusText != null) {
-                statusText.setText(status);
-            }
-        });
+    /**
+     * Show the scan counters. Must be called on the main thread.
+     */
+    public void showStatus(StatusChannel.Status status) {
+        if (statusText == null) return;
+        String text = String.format(Locale.US, "Found: %d  Saved: %d  Skipped: %d\n%.1f scans/s",
+                status.found, status.saved, status.skipped, status.scansPerSecond);
+        // Skip the layout pass when nothing visible changed
+        if (!text.contentEquals(statusText.getText())) {
+            statusText.setText(text);
+        }
     }
 
     public void showSummaryDialog(int detected, int saved, int skipped) {
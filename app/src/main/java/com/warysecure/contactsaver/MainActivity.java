@@ -19,12 +19,12 @@ import android.widget.Toast;
 import android.app.Activity;
 
 import com.warysecure.contactsaver.api.ApiClient;
+import com.warysecure.contactsaver.api.ContactSyncPipeline;
+import com.warysecure.contactsaver.api.SyncOutbox;
 import com.warysecure.contactsaver.models.ContactStats;
-import com.warysecure.contactsaver.models.ServerContact;
-import com.warysecure.contactsaver.models.SyncResult;
+import com.warysecure.contactsaver.scanner.ScanStateStore;
 import com.warysecure.contactsaver.utils.ServerContactSaver;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class MainActivity extends Activity {
@@ -50,6 +50,7 @@ public class MainActivity extends Activity {
     private TextView serverPendingCount;
     private TextView serverSyncedCount;
     private TextView serverFailedCount;
+    private final ScanStateStore.Listener scanStateListener = this::updateScanCounts;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,6 +72,14 @@ public class MainActivity extends Activity {
         super.onResume();
         updateUI();
         updateServerSection();
+        // Keep the counts live while a scan runs
+        ScanStateStore.getInstance().addListener(scanStateListener);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        ScanStateStore.getInstance().removeListener(scanStateListener);
     }
 
     private void initViews() {
@@ -130,12 +139,16 @@ public class MainActivity extends Activity {
         btnStartService.setEnabled(accessibilityEnabled && overlayEnabled && contactsEnabled);
 
         // Update counts from service
-        detectedCount.setText(String.valueOf(WhatsAppScannerService.detectedNumbers.size()));
-        savedCount.setText(String.valueOf(WhatsAppScannerService.savedCount));
-        unsavedCount.setText(String.valueOf(WhatsAppScannerService.unsavedNumbers.size()));
+        updateScanCounts(ScanStateStore.getInstance().getSnapshot());
+    }
+
+    private void updateScanCounts(ScanStateStore.Snapshot state) {
+        detectedCount.setText(String.valueOf(state.getDetectedCount()));
+        savedCount.setText(String.valueOf(state.getSavedCount()));
+        unsavedCount.setText(String.valueOf(state.getUnsavedCount()));
         
         // Enable view details button only if there are detected numbers
-        btnViewDetails.setEnabled(WhatsAppScannerService.detectedNumbers.size() > 0);
+        btnViewDetails.setEnabled(state.getDetectedCount() > 0);
     }
 
     private void updateServerSection() {
@@ -186,7 +199,7 @@ public class MainActivity extends Activity {
     private void updateServerStats() {
         new Thread(() -> {
             try {
-                ApiClient apiClient = new ApiClient(this);
+                ApiClient apiClient = ApiClient.getInstance(this);
                 ContactStats stats = apiClient.getContactStats();
 
                 runOnUiThread(() -> {
@@ -213,12 +226,15 @@ public class MainActivity extends Activity {
 
         new Thread(() -> {
             try {
-                ApiClient apiClient = new ApiClient(this);
-                ServerContactSaver contactSaver = new ServerContactSaver(this);
-
-                List<ServerContact> pendingContacts = apiClient.getPendingContacts();
+                // Pages are fetched, saved and acked concurrently
+                ContactSyncPipeline pipeline = new ContactSyncPipeline(ApiClient.getInstance(this),
+                        new ServerContactSaver(this),
+                        SyncOutbox.getInstance(this),
+                        getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                                .getInt("sync_page_size", ContactSyncPipeline.DEFAULT_PAGE_SIZE));
+                ContactSyncPipeline.Summary summary = pipeline.run();
                 
-                if (pendingContacts.isEmpty()) {
+                if (summary.isEmpty()) {
                     runOnUiThread(() -> {
                         dialog.dismiss();
                         Toast.makeText(this, "No pending contacts to sync", Toast.LENGTH_SHORT).show();
@@ -227,25 +243,8 @@ public class MainActivity extends Activity {
                     return;
                 }
 
-                List<SyncResult> syncResults = new ArrayList<>();
-                int savedCount = 0;
-                int failedCount = 0;
-
-                for (ServerContact contact : pendingContacts) {
-                    String deviceContactId = contactSaver.saveContact(contact);
-                    
-                    if (deviceContactId != null) {
-                        syncResults.add(new SyncResult(contact.id, deviceContactId, "synced"));
-                        savedCount++;
-                    } else {
-                        syncResults.add(new SyncResult(contact.id, null, "failed"));
-                        failedCount++;
-                    }
-                }
-
-                if (!syncResults.isEmpty()) {
-                    apiClient.bulkSync(syncResults);
-                }
+                int savedCount = summary.savedCount;
+                int failedCount = summary.failedCount;
 
                 // Update last sync time
                 prefs.edit().putLong("last_sync_time", System.currentTimeMillis()).apply();
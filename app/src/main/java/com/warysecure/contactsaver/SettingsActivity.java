@@ -20,26 +20,32 @@ import androidx.work.PeriodicWorkRequest;
 import androidx.work.WorkManager;
 
 import com.warysecure.contactsaver.api.ApiClient;
+import com.warysecure.contactsaver.api.ContactSyncPipeline;
+import com.warysecure.contactsaver.api.SyncOutbox;
 import com.warysecure.contactsaver.models.ApiResponse;
 import com.warysecure.contactsaver.models.ContactStats;
-import com.warysecure.contactsaver.models.ServerContact;
-import com.warysecure.contactsaver.models.SyncResult;
+import com.warysecure.contactsaver.utils.PhoneMatcher;
 import com.warysecure.contactsaver.utils.ServerContactSaver;
 import com.warysecure.contactsaver.workers.ContactSyncWorker;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class SettingsActivity extends Activity {
     private static final String PREFS_NAME = "settings";
     private static final String WORK_NAME = "contact_sync_work";
+    private static final String[] LOOKUP_STRATEGIES = {
+            PhoneMatcher.STRATEGY_INDEXED,
+            PhoneMatcher.STRATEGY_PHONE_LOOKUP,
+            PhoneMatcher.STRATEGY_SCAN_ALL
+    };
 
     private EditText etServerUrl;
     private EditText etApiKey;
+    private EditText etDefaultCountryCode;
     private CheckBox cbAutoSync;
     private CheckBox cbSyncOnStart;
     private Spinner spinnerSyncInterval;
+    private Spinner spinnerLookupStrategy;
     private TextView tvLastSync;
     private TextView tvPendingCount;
     private TextView tvSyncedCount;
@@ -63,9 +69,11 @@ public class SettingsActivity extends Activity {
     private void initViews() {
         etServerUrl = findViewById(R.id.etServerUrl);
         etApiKey = findViewById(R.id.etApiKey);
+        etDefaultCountryCode = findViewById(R.id.etDefaultCountryCode);
         cbAutoSync = findViewById(R.id.cbAutoSync);
         cbSyncOnStart = findViewById(R.id.cbSyncOnStart);
         spinnerSyncInterval = findViewById(R.id.spinnerSyncInterval);
+        spinnerLookupStrategy = findViewById(R.id.spinnerLookupStrategy);
         tvLastSync = findViewById(R.id.tvLastSync);
         tvPendingCount = findViewById(R.id.tvPendingCount);
         tvSyncedCount = findViewById(R.id.tvSyncedCount);
@@ -80,6 +88,11 @@ public class SettingsActivity extends Activity {
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, intervals);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         spinnerSyncInterval.setAdapter(adapter);
+
+        String[] strategies = {"In-memory index", "Provider phone lookup", "Full table scan"};
+        ArrayAdapter<String> strategyAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, strategies);
+        strategyAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerLookupStrategy.setAdapter(strategyAdapter);
     }
 
     private void loadSettings() {
@@ -100,6 +113,14 @@ public class SettingsActivity extends Activity {
         }
         spinnerSyncInterval.setSelection(spinnerPosition);
 
+        String lookupStrategy = prefs.getString("lookup_strategy", PhoneMatcher.STRATEGY_INDEXED);
+        for (int i = 0; i < LOOKUP_STRATEGIES.length; i++) {
+            if (LOOKUP_STRATEGIES[i].equals(lookupStrategy)) {
+                spinnerLookupStrategy.setSelection(i);
+            }
+        }
+        etDefaultCountryCode.setText(prefs.getString("default_country_code", ""));
+
         updateLastSyncText();
     }
 
@@ -133,7 +154,7 @@ public class SettingsActivity extends Activity {
         ProgressDialog dialog = ProgressDialog.show(this, "Testing Connection", "Please wait...", true);
 
         new Thread(() -> {
-            ApiClient apiClient = new ApiClient(this);
+            ApiClient apiClient = ApiClient.getInstance(this);
             ApiResponse response = apiClient.verify();
 
             runOnUiThread(() -> {
@@ -160,12 +181,15 @@ public class SettingsActivity extends Activity {
 
         new Thread(() -> {
             try {
-                ApiClient apiClient = new ApiClient(this);
-                ServerContactSaver contactSaver = new ServerContactSaver(this);
-
-                List<ServerContact> pendingContacts = apiClient.getPendingContacts();
+                // Pages are fetched, saved and acked concurrently
+                ContactSyncPipeline pipeline = new ContactSyncPipeline(ApiClient.getInstance(this),
+                        new ServerContactSaver(this),
+                        SyncOutbox.getInstance(this),
+                        getSharedPreferences(PREFS_NAME, MODE_PRIVATE)
+                                .getInt("sync_page_size", ContactSyncPipeline.DEFAULT_PAGE_SIZE));
+                ContactSyncPipeline.Summary summary = pipeline.run();
                 
-                if (pendingContacts.isEmpty()) {
+                if (summary.isEmpty()) {
                     runOnUiThread(() -> {
                         dialog.dismiss();
                         Toast.makeText(this, "No pending contacts to sync", Toast.LENGTH_SHORT).show();
@@ -174,25 +198,8 @@ public class SettingsActivity extends Activity {
                     return;
                 }
 
-                List<SyncResult> syncResults = new ArrayList<>();
-                int savedCount = 0;
-                int failedCount = 0;
-
-                for (ServerContact contact : pendingContacts) {
-                    String deviceContactId = contactSaver.saveContact(contact);
-                    
-                    if (deviceContactId != null) {
-                        syncResults.add(new SyncResult(contact.id, deviceContactId, "synced"));
-                        savedCount++;
-                    } else {
-                        syncResults.add(new SyncResult(contact.id, null, "failed"));
-                        failedCount++;
-                    }
-                }
-
-                if (!syncResults.isEmpty()) {
-                    apiClient.bulkSync(syncResults);
-                }
+                int savedCount = summary.savedCount;
+                int failedCount = summary.failedCount;
 
                 // Update last sync time
                 SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
@@ -233,6 +240,7 @@ public class SettingsActivity extends Activity {
 
         boolean autoSyncEnabled = cbAutoSync.isChecked();
         boolean syncOnStart = cbSyncOnStart.isChecked();
+        String defaultCountryCode = etDefaultCountryCode.getText().toString().replaceAll("[^0-9]", "");
         
         int syncInterval = 15; // default
         switch (spinnerSyncInterval.getSelectedItemPosition()) {
@@ -249,6 +257,8 @@ public class SettingsActivity extends Activity {
                 .putBoolean("auto_sync_enabled", autoSyncEnabled)
                 .putBoolean("sync_on_start", syncOnStart)
                 .putInt("sync_interval", syncInterval)
+                .putString("lookup_strategy", LOOKUP_STRATEGIES[spinnerLookupStrategy.getSelectedItemPosition()])
+                .putString("default_country_code", defaultCountryCode)
                 .apply();
 
         // Schedule or cancel periodic sync based on settings
@@ -308,7 +318,7 @@ public class SettingsActivity extends Activity {
     private void updateSyncStats() {
         new Thread(() -> {
             try {
-                ApiClient apiClient = new ApiClient(this);
+                ApiClient apiClient = ApiClient.getInstance(this);
                 ContactStats stats = apiClient.getContactStats();
 
                 runOnUiThread(() -> {
@@ -9,10 +9,9 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.warysecure.contactsaver.scanner.ScanStateStore;
 
-public class ViewNumbersActivity extends Activity {
+public class ViewNumbersActivity extends Activity implements ScanStateStore.Listener {
 
     private Button btnTabAll;
     private Button btnTabSaved;
@@ -26,6 +25,11 @@ public class ViewNumbersActivity extends Activity {
     private LinearLayout numberListContainer;
     
     private String currentTab = "all";
+    // How much of the scan state the list shows: its session, entries looked at, cards added
+    private int shownSession = -1;
+    private int shownEntries = 0;
+    private int shownCards = 0;
+    private TextView emptyView;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,8 +38,34 @@ public class ViewNumbersActivity extends Activity {
 
         initViews();
         setupClickListeners();
-        updateStats();
-        displayNumbers("all");
+        ScanStateStore.Snapshot state = ScanStateStore.getInstance().getSnapshot();
+        updateStats(state);
+        displayNumbers(state);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        ScanStateStore store = ScanStateStore.getInstance();
+        store.addListener(this);
+        // Catch up with numbers found while stopped
+        onScanStateChanged(store.getSnapshot());
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        ScanStateStore.getInstance().removeListener(this);
+    }
+
+    @Override
+    public void onScanStateChanged(ScanStateStore.Snapshot state) {
+        updateStats(state);
+        if (state.session != shownSession) {
+            displayNumbers(state);
+        } else {
+            appendNumbers(state);
+        }
     }
 
     private void initViews() {
@@ -55,19 +85,19 @@ public class ViewNumbersActivity extends Activity {
         btnTabAll.setOnClickListener(v -> {
             currentTab = "all";
             updateTabStyle();
-            displayNumbers("all");
+            displayNumbers(ScanStateStore.getInstance().getSnapshot());
         });
 
         btnTabSaved.setOnClickListener(v -> {
             currentTab = "saved";
             updateTabStyle();
-            displayNumbers("saved");
+            displayNumbers(ScanStateStore.getInstance().getSnapshot());
         });
 
         btnTabUnsaved.setOnClickListener(v -> {
             currentTab = "unsaved";
             updateTabStyle();
-            displayNumbers("unsaved");
+            displayNumbers(ScanStateStore.getInstance().getSnapshot());
         });
 
         btnCloseView.setOnClickListener(v -> finish());
@@ -97,51 +127,51 @@ public class ViewNumbersActivity extends Activity {
         }
     }
 
-    private void updateStats() {
-        int total = WhatsAppScannerService.detectedNumbers.size();
-        int saved = WhatsAppScannerService.savedCount;
-        int unsaved = WhatsAppScannerService.unsavedNumbers.size();
-        
-        statsTotal.setText(String.valueOf(total));
-        statsSaved.setText(String.valueOf(saved));
-        statsUnsaved.setText(String.valueOf(unsaved));
+    private void updateStats(ScanStateStore.Snapshot state) {
+        statsTotal.setText(String.valueOf(state.getDetectedCount()));
+        statsSaved.setText(String.valueOf(state.getSavedCount()));
+        statsUnsaved.setText(String.valueOf(state.getUnsavedCount()));
     }
 
-    private void displayNumbers(String filter) {
+    private void displayNumbers(ScanStateStore.Snapshot state) {
         numberListContainer.removeAllViews();
+        emptyView = null;
+        shownSession = state.session;
+        shownEntries = 0;
+        shownCards = 0;
+
+        appendNumbers(state);
         
-        List<String> numbersToDisplay = new ArrayList<>();
-        
-        if (filter.equals("all")) {
-            numbersToDisplay.addAll(WhatsAppScannerService.detectedNumbers);
-        } else if (filter.equals("saved")) {
-            // Show only saved numbers (those not in unsaved list)
-            for (String number : WhatsAppScannerService.detectedNumbers) {
-                if (!WhatsAppScannerService.unsavedNumbers.contains(number)) {
-                    numbersToDisplay.add(number);
-                }
-            }
-        } else if (filter.equals("unsaved")) {
-            numbersToDisplay.addAll(WhatsAppScannerService.unsavedNumbers);
-        }
-        
-        if (numbersToDisplay.isEmpty()) {
-            TextView emptyView = new TextView(this);
+        if (shownCards == 0) {
+            emptyView = new TextView(this);
             emptyView.setText("No numbers to display");
             emptyView.setTextSize(16);
             emptyView.setTextColor(Color.parseColor("#888888"));
             emptyView.setPadding(20, 40, 20, 40);
             emptyView.setGravity(android.view.Gravity.CENTER);
             numberListContainer.addView(emptyView);
-            return;
         }
-        
-        int index = 0;
-        for (String number : numbersToDisplay) {
-            index++;
-            View numberCard = createNumberCard(number, index, !WhatsAppScannerService.unsavedNumbers.contains(number));
-            numberListContainer.addView(numberCard);
+    }
+
+    /**
+     * Add cards for the entries detected since the list was last updated.
+     */
+    private void appendNumbers(ScanStateStore.Snapshot state) {
+        int count = state.getDetectedCount();
+        for (int i = shownEntries; i < count; i++) {
+            boolean isSaved = !state.isUnsaved(i);
+            // Saved tab shows the numbers not in the unsaved list
+            if (currentTab.equals("saved") && !isSaved) continue;
+            if (currentTab.equals("unsaved") && isSaved) continue;
+
+            if (emptyView != null) {
+                numberListContainer.removeView(emptyView);
+                emptyView = null;
+            }
+            shownCards++;
+            numberListContainer.addView(createNumberCard(state.getNumber(i), shownCards, isSaved));
         }
+        shownEntries = count;
     }
 
     private View createNumberCard(String phoneNumber, int index, boolean isSaved) {
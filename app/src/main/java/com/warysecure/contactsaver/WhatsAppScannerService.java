@@ -1,53 +1,110 @@
 package com.warysecure.contactsaver;
 
 import android.accessibilityservice.AccessibilityService;
-import android.accessibilityservice.GestureDescription;
-import android.content.ContentProviderOperation;
-import android.content.ContentResolver;
 import android.content.Intent;
-import android.database.Cursor;
-import android.graphics.Path;
+import android.content.SharedPreferences;
 import android.graphics.Rect;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
-import android.provider.ContactsContract;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Toast;
 
+import com.warysecure.contactsaver.scanner.NodeFingerprintCache;
+import com.warysecure.contactsaver.scanner.NodeTraversal;
+import com.warysecure.contactsaver.scanner.ScanJournal;
+import com.warysecure.contactsaver.scanner.ScanPacer;
+import com.warysecure.contactsaver.scanner.ScanPipeline;
+import com.warysecure.contactsaver.scanner.ScanScheduler;
+import com.warysecure.contactsaver.scanner.ScanStateStore;
+import com.warysecure.contactsaver.scanner.ScannedContactWriter;
+import com.warysecure.contactsaver.scanner.ScrollDriver;
+import com.warysecure.contactsaver.scanner.StatusChannel;
+import com.warysecure.contactsaver.utils.DeviceContactSnapshot;
+import com.warysecure.contactsaver.utils.PhoneNormalizer;
+import com.warysecure.contactsaver.utils.PhoneNumberScanner;
+import com.warysecure.contactsaver.utils.PhoneNumberSet;
+
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public class WhatsAppScannerService extends AccessibilityService {
 
     private static final String TAG = "WhatsAppScanner";
+    private static final int TEXT_CACHE_SIZE = 512;
+    private static final long[] NO_NUMBERS = new long[0];
+    // Rescans of one page before scrolling on, when scans keep running out of budget
+    private static final int MAX_CATCH_UP_SCANS = 10;
     
-    // Phone number patterns (international formats)
-    private static final Pattern PHONE_PATTERN = Pattern.compile(
-        "\\+?[0-9]{1,4}[\\s\\-]?[0-9]{2,4}[\\s\\-]?[0-9]{3,4}[\\s\\-]?[0-9]{3,4}"
-    );
-
-    public static Set<String> detectedNumbers = new HashSet<>();
-    public static Set<String> existingContacts = new HashSet<>();
-    public static Set<String> unsavedNumbers = new HashSet<>();
-    public static int savedCount = 0;
-    // Sequential counter for CLAUD_XXX contact naming (resets to 1 at each scan session)
-    public static int contactSequenceNumber = 1;
-    public static boolean isScanning = false;
-
+    public static volatile boolean isScanning = false;
+
+    // Numbers are stored as packed long keys; the sets still read as Set<String>.
+    // Scanner threads only: the UI reads the published ScanStateStore snapshots
+    private final PhoneNumberSet detectedNumbers = new PhoneNumberSet();
+    private final PhoneNumberSet existingContacts = new PhoneNumberSet();
+    private final PhoneNumberSet unsavedNumbers = new PhoneNumberSet();
+    private final ScanStateStore scanState = ScanStateStore.getInstance();
+    // Written by the pipeline's writer thread
+    private volatile int savedCount = 0;
+    // Sequential counter for CLAUD_XXX contact naming (resets to 1 at each scan session),
+    // taken when a number is queued for saving; restored from the journal after a restart
+    private volatile int contactSequenceNumber = 1;
+
+    // Main thread: toasts and the overlay
     private Handler handler;
+    // Scheduling, node reads and scrolls run here, off the main thread
+    private HandlerThread scanThread;
+    private Handler scanHandler;
+    private ScanScheduler scanScheduler;
+    private ScanPipeline<ScannedContactWriter.Contact> scanPipeline;
+    private NodeTraversal nodeTraversal;
+    private ScrollDriver scrollDriver;
+    private ScanPacer scanPacer;
+    private ScanJournal scanJournal;
+    private StatusChannel statusChannel;
+    // Session replayed from the journal, resumed by the next startScanning
+    private ScanJournal.Session interruptedSession;
+    // A start requested while the last run's pipeline was still draining; scan thread only
+    private boolean startWhenDrained = false;
+    // Content and movement fingerprints of the last scan, 0 when unknown; scan thread only
+    private long lastContentFingerprint = 0;
+    private long lastMovementFingerprint = 0;
+    // Whether the last scan ran out of budget, and how many rows it read to the end; scan thread only
+    private boolean lastScanOverBudget = false;
+    private int lastScanRowsRead = 0;
+    private int catchUpScans = 0;
     private int screenHeight;
     private int screenWidth;
     private int scrollCount = 0;
     private int maxScrolls = 100;
     private int maxNumbersToSave = 2000;
-    private int noNewNumbersCount = 0;
+    // Written by the extractor thread, read by the auto-scroll loop
+    private volatile int noNewNumbersCount = 0;
+    // Numbers handed to the writer this session; extractor thread only
+    private int queuedSaveCount = 0;
+    private PhoneNormalizer phoneNormalizer = new PhoneNormalizer("");
+    // Finds international-format numbers, see PhoneNumberScanner.REFERENCE_PATTERN
+    private final PhoneNumberScanner phoneScanner = new PhoneNumberScanner();
+    // Extractor thread only: numbers found per node text, and a scratch buffer
+    private final LruCache<String, long[]> textNumberCache = new LruCache<>(TEXT_CACHE_SIZE);
+    private long[] numberBuffer = new long[4];
+    // Scan thread only: nodes and rows already read this session
+    private final NodeFingerprintCache fingerprintCache = new NodeFingerprintCache();
+
+    // Posted for accessibility events; merged while one is still queued
+    private final Runnable onContentChanged = () -> scanScheduler.requestScan();
+    private final Runnable onScrolled = () -> {
+        scanPacer.onScrollEvent();
+        scanScheduler.requestScan();
+    };
 
     private static WhatsAppScannerService instance;
 
@@ -60,6 +117,19 @@ public class WhatsAppScannerService extends AccessibilityService {
         super.onCreate();
         instance = this;
         handler = new Handler(Looper.getMainLooper());
+        scanThread = new HandlerThread("scan-capture");
+        scanThread.start();
+        scanHandler = new Handler(scanThread.getLooper());
+        SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
+        long coalesceMs = prefs.getLong("scan_coalesce_ms", ScanScheduler.DEFAULT_WINDOW_MS);
+        scanScheduler = new ScanScheduler(scanHandler, this::scanForPhoneNumbers, coalesceMs);
+        nodeTraversal = new NodeTraversal(
+                prefs.getInt("scan_node_budget", NodeTraversal.DEFAULT_NODE_BUDGET),
+                prefs.getLong("scan_time_budget_ms", NodeTraversal.DEFAULT_TIME_BUDGET_MS));
+        nodeTraversal.setFingerprintCache(fingerprintCache);
+        // Overlay status is throttled to the latest counters once per frame or interval
+        statusChannel = new StatusChannel(handler,
+                prefs.getLong("overlay_update_ms", StatusChannel.DEFAULT_INTERVAL_MS), this::showStatus);
         
         // Get screen dimensions
         WindowManager wm = (WindowManager) getSystemService(WINDOW_SERVICE);
@@ -67,9 +137,21 @@ public class WhatsAppScannerService extends AccessibilityService {
         wm.getDefaultDisplay().getMetrics(metrics);
         screenHeight = metrics.heightPixels;
         screenWidth = metrics.widthPixels;
+        scrollDriver = new ScrollDriver(this, nodeTraversal, screenWidth, screenHeight,
+                prefs.getLong("scan_gesture_ms", ScrollDriver.DEFAULT_GESTURE_DURATION_MS), scanHandler);
+        // Each step waits for the list to settle rather than a fixed delay
+        scanPacer = new ScanPacer(scanHandler, scanScheduler::scanNow,
+                prefs.getLong("scan_pace_floor_ms", ScanPacer.DEFAULT_FLOOR_MS),
+                prefs.getLong("scan_pace_ceiling_ms", ScanPacer.DEFAULT_CEILING_MS),
+                prefs.getLong("scan_pace_quiet_ms", ScanPacer.DEFAULT_QUIET_MS));
 
         // Load existing contacts
         loadExistingContacts();
+
+        // Pick up a session the service was killed in the middle of
+        scanJournal = new ScanJournal(new File(getFilesDir(), ScanJournal.FILE_NAME),
+                prefs.getInt("scan_journal_sync_every", ScanJournal.DEFAULT_SYNC_EVERY));
+        restoreInterruptedSession();
         
         Log.d(TAG, "WhatsApp Scanner Service Created");
     }
@@ -81,13 +163,20 @@ public class WhatsAppScannerService extends AccessibilityService {
         String packageName = event.getPackageName() != null ? event.getPackageName().toString() : "";
         
         if (packageName.equals("com.whatsapp") || packageName.equals("com.whatsapp.w4b")) {
-            if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED ||
-                event.getEventType() == AccessibilityEvent.TYPE_VIEW_SCROLLED) {
-                scanForPhoneNumbers();
+            // Bursts of events are merged into one scan per window, on the scan thread
+            if (event.getEventType() == AccessibilityEvent.TYPE_VIEW_SCROLLED) {
+                postOnce(onScrolled);
+            } else if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) {
+                postOnce(onContentChanged);
             }
         }
     }
 
+    private void postOnce(Runnable task) {
+        scanHandler.removeCallbacks(task);
+        scanHandler.post(task);
+    }
+
     @Override
     public void onInterrupt() {
         Log.d(TAG, "Service interrupted");
@@ -96,236 +185,448 @@ public class WhatsAppScannerService extends AccessibilityService {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        isScanning = false;
+        scanHandler.removeCallbacksAndMessages(null);
+        scanHandler.post(() -> {
+            if (scanPipeline != null) {
+                // Keep the journal open so the session can be resumed
+                scanPipeline.stop(scanJournal::sync);
+            }
+        });
+        // Runs the stop above, then ends the thread
+        scanThread.quitSafely();
         instance = null;
     }
 
     private void loadExistingContacts() {
+        // Device numbers go through the same canonicalization as detected ones
+        String countryCode = getSharedPreferences("settings", MODE_PRIVATE).getString("default_country_code", "");
+        phoneNormalizer = new PhoneNormalizer(countryCode);
+
         existingContacts.clear();
-        ContentResolver cr = getContentResolver();
-        Cursor cursor = cr.query(
-            ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-            new String[]{ContactsContract.CommonDataKinds.Phone.NUMBER},
-            null, null, null
-        );
-
-        if (cursor != null) {
-            while (cursor.moveToNext()) {
-                String number = cursor.getString(0);
-                if (number != null) {
-                    existingContacts.add(normalizeNumber(number));
-                }
+        DeviceContactSnapshot snapshot = DeviceContactSnapshot.getInstance(this);
+        snapshot.refresh();
+        snapshot.collectNumbers(phoneNormalizer, existingContacts);
+        // Only the packed keys stay in this long-lived process
+        snapshot.trimMemory();
+        Log.d(TAG, "Loaded " + existingContacts.size() + " existing contacts");
+    }
+
+    private void restoreInterruptedSession() {
+        interruptedSession = scanJournal.replay();
+        if (interruptedSession == null) return;
+
+        detectedNumbers.clear();
+        unsavedNumbers.clear();
+        detectedNumbers.addAll(interruptedSession.detected);
+        unsavedNumbers.addAll(interruptedSession.skipped);
+        savedCount = interruptedSession.savedCount;
+        contactSequenceNumber = interruptedSession.lastSequence + 1;
+        scanState.reset(interruptedSession.detected, interruptedSession.skipped, savedCount);
+        Log.d(TAG, "Restored interrupted session: " + detectedNumbers.size() + " detected, "
+                + savedCount + " saved");
+    }
+
+    /**
+     * Queue the numbers the interrupted session had named but not saved. Runs on the extractor thread.
+     */
+    private void resumePendingSaves(Map<String, Integer> pending) {
+        // First count the ones saved before the journal could record them,
+        // while the writer thread is still idle and not touching savedCount
+        List<ScannedContactWriter.Contact> unsaved = new ArrayList<>();
+        int alreadySaved = 0;
+        for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+            String number = entry.getKey();
+            if (existingContacts.contains(number)) {
+                alreadySaved++;
+                scanJournal.recordSaved(number);
+            } else {
+                unsaved.add(new ScannedContactWriter.Contact(number, String.format("CLAUD_%03d", entry.getValue())));
             }
-            cursor.close();
         }
-        Log.d(TAG, "Loaded " + existingContacts.size() + " existing contacts");
+        savedCount += alreadySaved;
+        scanState.addSaved(alreadySaved);
+        scanJournal.sync();
+
+        for (ScannedContactWriter.Contact contact : unsaved) {
+            queuedSaveCount++;
+            existingContacts.add(contact.phoneNumber);
+            scanPipeline.submitWrite(contact);
+        }
     }
 
-    private String normalizeNumber(String number) {
-        return number.replaceAll("[^0-9+]", "");
+    private String normalizeNumber(CharSequence number) {
+        return phoneNormalizer.canonicalize(number);
     }
 
+    /**
+     * Start a scan session, or resume the interrupted one. Any thread.
+     */
     public void startScanning() {
+        scanHandler.post(this::startSession);
+    }
+
+    /**
+     * Stop the scan session; the summary shows once its numbers are saved. Any thread.
+     */
+    public void stopScanning() {
+        scanHandler.post(this::stopSession);
+    }
+
+    private void startSession() {
+        if (scanPipeline != null && !scanPipeline.isDrained()) {
+            if (scanPipeline.isStopping()) {
+                // The last run's threads still use the number sets; start once they are done
+                startWhenDrained = true;
+                showToast("Finishing the previous scan...");
+            } else {
+                Log.d(TAG, "Scanning already running");
+            }
+            return;
+        }
+
         isScanning = true;
         scrollCount = 0;
         noNewNumbersCount = 0;
-        detectedNumbers.clear();
-        unsavedNumbers.clear();
-        savedCount = 0;
-        contactSequenceNumber = 1;
+        ScanJournal.Session resumed = interruptedSession;
+        interruptedSession = null;
+        if (resumed != null) {
+            // Carry on from the journal: keep the numbers, counts and sequence restored in onCreate
+            queuedSaveCount = savedCount;
+        } else {
+            detectedNumbers.clear();
+            unsavedNumbers.clear();
+            savedCount = 0;
+            contactSequenceNumber = 1;
+            queuedSaveCount = 0;
+            scanState.reset();
+        }
+        statusChannel.reset();
         loadExistingContacts();
+        scanScheduler.reset();
+        nodeTraversal.reset();
+        fingerprintCache.clear();
+        textNumberCache.evictAll();
+        scrollDriver.reset();
+        scanPacer.reset();
+        lastContentFingerprint = 0;
+        lastMovementFingerprint = 0;
+        lastScanOverBudget = false;
+        lastScanRowsRead = 0;
+        catchUpScans = 0;
+
+        // Extraction and contact writes run on the pipeline's threads; writes are
+        // batched and flushed every batch size numbers or flush interval
+        SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
+        ScannedContactWriter writer = new ScannedContactWriter(getContentResolver(),
+                prefs.getInt("scan_write_batch_size", ScannedContactWriter.DEFAULT_BATCH_SIZE),
+                scanJournal, this::onContactsSaved);
+        scanPipeline = new ScanPipeline<>(this::extractPhoneNumbers, writer,
+                prefs.getLong("scan_write_flush_ms", ScanPipeline.DEFAULT_FLUSH_INTERVAL_MS));
+        scanJournal.startSession(resumed != null);
+        scanPipeline.start();
+        if (resumed != null) {
+            scanPipeline.submitTask(() -> resumePendingSaves(resumed.pending));
+        }
         
         // Initial scan
-        scanForPhoneNumbers();
+        scanScheduler.scanNow();
         
-        // Start auto-scroll
-        handler.postDelayed(this::performAutoScroll, 1000);
+        // Start auto-scroll once the first page has settled
+        scanPacer.awaitSettled(false, this::performAutoScroll);
         
-        showToast("Scanning started...");
+        showToast(resumed != null ? "Resuming interrupted scan..." : "Scanning started...");
         Log.d(TAG, "Scanning started");
     }
 
-    public void stopScanning() {
+    private void stopSession() {
         isScanning = false;
-        handler.removeCallbacksAndMessages(null);
-        
-        // Show summary
-        showSummary();
-        
-        Log.d(TAG, "Scanning stopped. Detected: " + detectedNumbers.size() + ", Saved: " + savedCount);
+        startWhenDrained = false;
+        scanScheduler.cancel();
+        scanPacer.cancel();
+        statusChannel.cancel();
+        scanHandler.removeCallbacksAndMessages(null);
+        if (scanPipeline == null || scanPipeline.isStopping()) {
+            // No run in progress, e.g. the service was recreated since the scan started
+            showSummary();
+            return;
+        }
+
+        Log.d(TAG, "Scans run: " + scanScheduler.getScanCount() + ", scans saved by coalescing: "
+                + scanScheduler.getScansSaved() + ", dropped while busy: " + scanPipeline.getDroppedCaptures());
+        Log.d(TAG, "Traversal: " + nodeTraversal.getSessionStats());
+        Log.d(TAG, "Scrolls: " + scrollDriver.getActionScrolls() + " by action, "
+                + scrollDriver.getGestureScrolls() + " by gesture");
+        Log.d(TAG, "Pacing: " + scanPacer.getStats());
+
+        // Show summary once the queued numbers are extracted and written
+        scanPipeline.stop(() -> {
+            scanJournal.endSession();
+            scanHandler.post(() -> {
+                showSummary();
+                Log.d(TAG, "Scanning stopped. Detected: " + detectedNumbers.size() + ", Saved: " + savedCount);
+                if (startWhenDrained) {
+                    startWhenDrained = false;
+                    startSession();
+                }
+            });
+        });
     }
 
     private void scanForPhoneNumbers() {
+        if (scanPipeline == null || scanPipeline.isStopping()) return;
+
         AccessibilityNodeInfo rootNode = getRootInActiveWindow();
-        if (rootNode == null) return;
+        if (rootNode == null) {
+            lastContentFingerprint = 0;
+            lastMovementFingerprint = 0;
+            lastScanOverBudget = false;
+            lastScanRowsRead = 0;
+            scanPacer.onScanned(0);
+            return;
+        }
+
+        // Only read the node texts here, copied so they outlive the nodes;
+        // the extractor thread does the rest
+        List<CharSequence> texts = new ArrayList<>();
+        NodeTraversal.Stats stats = nodeTraversal.traverse(rootNode, node -> {
+            CharSequence text = node.getText();
+            CharSequence desc = node.getContentDescription();
+            if (text != null) {
+                texts.add(text.toString());
+            }
+            if (desc != null) {
+                texts.add(desc.toString());
+            }
+        });
+        rootNode.recycle();
+        statusChannel.onScan();
+        lastContentFingerprint = stats.contentFingerprint;
+        lastMovementFingerprint = stats.movementFingerprint;
+        lastScanOverBudget = stats.budgetExceeded > 0;
+        lastScanRowsRead = stats.rowsRead;
+        scanPacer.onScanned(lastContentFingerprint);
+
+        if (!scanPipeline.submitCapture(texts)) {
+            // The dropped texts are marked as read; forget that so the next scan reads them again
+            fingerprintCache.clear();
+        }
+    }
 
+    /**
+     * Find the numbers in one captured scan. Runs on the extractor thread.
+     */
+    private void extractPhoneNumbers(List<CharSequence> texts) {
         int previousCount = detectedNumbers.size();
-        traverseNode(rootNode);
-        
+        for (CharSequence text : texts) {
+            extractPhoneNumbers(text);
+        }
+
         if (detectedNumbers.size() == previousCount) {
             noNewNumbersCount++;
         } else {
             noNewNumbersCount = 0;
         }
 
-        rootNode.recycle();
-        
-        // Update floating window
-        FloatingWindowService floatingService = FloatingWindowService.getInstance();
-        if (floatingService != null) {
-            floatingService.updateStatus("Found: " + detectedNumbers.size());
-        }
+        publishStatus();
     }
 
-    private void traverseNode(AccessibilityNodeInfo node) {
-        if (node == null) return;
-
-        // Get text content
-        CharSequence text = node.getText();
-        CharSequence desc = node.getContentDescription();
-
-        if (text != null) {
-            extractPhoneNumbers(text.toString());
+    private void extractPhoneNumbers(CharSequence text) {
+        for (long number : numbersIn(text)) {
+            onNumberFound(number);
         }
-        if (desc != null) {
-            extractPhoneNumbers(desc.toString());
+    }
+
+    /**
+     * The numbers of at least 10 digits in a text, as PhoneNumberSet keys.
+     * Rows that a scroll only moved come back with the same texts, so results are cached.
+     */
+    private long[] numbersIn(CharSequence text) {
+        String cacheKey = text.toString();
+        long[] numbers = textNumberCache.get(cacheKey);
+        if (numbers != null) {
+            return numbers;
         }
 
-        // Traverse children
-        for (int i = 0; i < node.getChildCount(); i++) {
-            AccessibilityNodeInfo child = node.getChild(i);
-            if (child != null) {
-                traverseNode(child);
-                child.recycle();
+        int count = 0;
+        phoneScanner.reset(text);
+        while (phoneScanner.find()) {
+            // Validate: at least 10 digits
+            if (phoneScanner.digitCount() >= 10) {
+                if (count == numberBuffer.length) {
+                    numberBuffer = Arrays.copyOf(numberBuffer, count * 2);
+                }
+                numberBuffer[count++] = phoneScanner.key();
             }
         }
+        numbers = count == 0 ? NO_NUMBERS : Arrays.copyOf(numberBuffer, count);
+        textNumberCache.put(cacheKey, numbers);
+        return numbers;
     }
 
-    private void extractPhoneNumbers(String text) {
-        Matcher matcher = PHONE_PATTERN.matcher(text);
-        while (matcher.find()) {
-            String number = matcher.group();
-            String normalized = normalizeNumber(number);
+    private void onNumberFound(long number) {
+        // Work on the packed key; only numbers seen for the first time become Strings
+        long key = phoneNormalizer.canonicalize(number);
+        String normalized = null;
+        boolean isNew;
+        if (key != PhoneNumberSet.NO_KEY) {
+            isNew = detectedNumbers.addKey(key);
+        } else {
+            normalized = normalizeNumber(PhoneNumberSet.decode(number));
+            isNew = detectedNumbers.add(normalized);
+        }
+
+        if (isNew) {
+            if (normalized == null) {
+                normalized = PhoneNumberSet.decode(key);
+            }
+            Log.d(TAG, "New number detected: " + normalized);
             
-            // Validate: at least 10 digits
-            if (normalized.replaceAll("\\+", "").length() >= 10) {
-                if (!detectedNumbers.contains(normalized)) {
-                    detectedNumbers.add(normalized);
-                    Log.d(TAG, "New number detected: " + normalized);
-                    
-                    // Check if number already exists or if we've reached the limit
-                    if (existingContacts.contains(normalized)) {
-                        unsavedNumbers.add(normalized);
-                        Log.d(TAG, "Number already exists in contacts: " + normalized);
-                    } else if (savedCount < maxNumbersToSave) {
-                        // Save to contacts immediately
-                        saveContact(normalized);
-                    } else {
-                        unsavedNumbers.add(normalized);
-                        Log.d(TAG, "Max save limit reached: " + normalized);
-                    }
-                }
+            // Check if number already exists or if we've reached the limit
+            if (existingContacts.contains(normalized)) {
+                unsavedNumbers.add(normalized);
+                scanJournal.recordSkipped(normalized);
+                scanState.addNumber(normalized, true);
+                Log.d(TAG, "Number already exists in contacts: " + normalized);
+            } else if (queuedSaveCount < maxNumbersToSave) {
+                // Name it now so the sequence follows detection order, then hand over to the writer
+                int sequence = contactSequenceNumber++;
+                String displayName = String.format("CLAUD_%03d", sequence);
+                queuedSaveCount++;
+                scanJournal.recordDetected(normalized, sequence);
+                scanState.addNumber(normalized, false);
+                existingContacts.add(normalized);
+                scanPipeline.submitWrite(new ScannedContactWriter.Contact(normalized, displayName));
+            } else {
+                unsavedNumbers.add(normalized);
+                scanJournal.recordSkipped(normalized);
+                scanState.addNumber(normalized, true);
+                Log.d(TAG, "Max save limit reached: " + normalized);
             }
         }
     }
 
-    private void saveContact(String phoneNumber) {
-        try {
-            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
-            
-            int rawContactInsertIndex = ops.size();
-            
-            // Create new raw contact
-            ops.add(ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
-                    .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null)
-                    .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null)
-                    .build());
-
-            // Add display name with CLAUD_ prefix
-            String displayName = String.format("CLAUD_%03d", contactSequenceNumber);
-            ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-                    .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactInsertIndex)
-                    .withValue(ContactsContract.Data.MIMETYPE,
-                            ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
-                    .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, displayName)
-                    .build());
-
-            // Add phone number
-            ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-                    .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactInsertIndex)
-                    .withValue(ContactsContract.Data.MIMETYPE,
-                            ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
-                    .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phoneNumber)
-                    .withValue(ContactsContract.CommonDataKinds.Phone.TYPE,
-                            ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE)
-                    .build());
-
-            getContentResolver().applyBatch(ContactsContract.AUTHORITY, ops);
-            savedCount++;
-            contactSequenceNumber++;
-            existingContacts.add(phoneNumber);
-            
-            Log.d(TAG, "Saved contact: " + displayName + " - " + phoneNumber);
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error saving contact: " + e.getMessage());
+    /**
+     * Count contacts the writer has put in the provider. Runs on the writer thread.
+     */
+    private void onContactsSaved(List<ScannedContactWriter.Contact> saved) {
+        savedCount += saved.size();
+        scanState.addSaved(saved.size());
+        for (ScannedContactWriter.Contact contact : saved) {
+            scanJournal.recordSaved(contact.phoneNumber);
+            Log.d(TAG, "Saved contact: " + contact.displayName + " - " + contact.phoneNumber);
+        }
+        // One fsync per provider batch
+        scanJournal.sync();
+        publishStatus();
+    }
+
+    private void publishStatus() {
+        ScanStateStore.Snapshot state = scanState.getSnapshot();
+        statusChannel.publish(state.getDetectedCount(), state.getSavedCount(), state.getUnsavedCount());
+    }
+
+    /**
+     * Update the floating window. Runs on the main thread, at most once per frame.
+     */
+    private void showStatus(StatusChannel.Status status) {
+        FloatingWindowService floatingService = FloatingWindowService.getInstance();
+        if (floatingService != null && isScanning) {
+            floatingService.showStatus(status);
         }
     }
 
     private void performAutoScroll() {
         if (!isScanning) return;
+        if (catchUp(this::performAutoScroll)) return;
 
         scrollCount++;
         
         // Stop conditions
-        if (scrollCount >= maxScrolls || noNewNumbersCount >= 10) {
-            stopScanning();
+        if (scrollCount >= maxScrolls) {
+            stopSession();
             return;
         }
 
-        // Perform swipe gesture to scroll
-        Path swipePath = new Path();
-        float startY = screenHeight * 0.7f;
-        float endY = screenHeight * 0.3f;
-        float x = screenWidth / 2f;
-
-        swipePath.moveTo(x, startY);
-        swipePath.lineTo(x, endY);
-
-        GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
-        gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 0, 300));
-
-        dispatchGesture(gestureBuilder.build(), new GestureResultCallback() {
+        AccessibilityNodeInfo rootNode = getRootInActiveWindow();
+        scrollDriver.scrollForward(rootNode, lastMovementFingerprint, new ScrollDriver.Callback() {
             @Override
-            public void onCompleted(GestureDescription gestureDescription) {
-                super.onCompleted(gestureDescription);
-                // Continue scrolling after a delay
-                handler.postDelayed(() -> {
-                    scanForPhoneNumbers();
-                    performAutoScroll();
-                }, 800);
+            public void onScrolled(boolean usedGesture) {
+                // Continue once the new page has settled; the pacer's last scan saw it.
+                // A gesture's scroll events came while it ran, so do not wait for one
+                scanPacer.awaitSettled(!usedGesture, () -> {
+                    if (!isScanning) return;
+
+                    // The same visible rows as before the scroll means the end
+                    if (!scrollDriver.hasMoved(lastMovementFingerprint)) {
+                        Log.d(TAG, "List did not move, end of list");
+                        stopAtEndOfList();
+                    } else if (usedGesture && noNewNumbersCount >= 10) {
+                        // Gesture scrolls also keep the old empty-scan limit as a safety net
+                        stopSession();
+                    } else {
+                        performAutoScroll();
+                    }
+                });
             }
 
             @Override
-            public void onCancelled(GestureDescription gestureDescription) {
-                super.onCancelled(gestureDescription);
-                Log.d(TAG, "Scroll gesture cancelled");
+            public void onEndOfList() {
+                Log.d(TAG, "List cannot scroll further, end of list");
+                scanScheduler.scanNow();
+                stopAtEndOfList();
+            }
+        });
+        if (rootNode != null) {
+            rootNode.recycle();
+        }
+    }
+
+    private void stopAtEndOfList() {
+        if (!isScanning) return;
+        if (catchUp(this::stopAtEndOfList)) return;
+        stopSession();
+    }
+
+    /**
+     * Scan the page again before moving on if the last scan ran out of budget.
+     * Its rows below the cut-off are unread, and a scroll would carry them
+     * away; rows read alike twice cost no fetch, so each rescan reads further.
+     * Gives up once a scan reads no row to the end, or after MAX_CATCH_UP_SCANS.
+     *
+     * @param next Run once the rescans have settled
+     * @return true if rescans were started, false to move on now
+     */
+    private boolean catchUp(Runnable next) {
+        if (!lastScanOverBudget || lastScanRowsRead == 0 || catchUpScans >= MAX_CATCH_UP_SCANS) {
+            if (lastScanOverBudget) {
+                Log.d(TAG, "Moving on from a page not read to the end");
             }
-        }, null);
+            catchUpScans = 0;
+            return false;
+        }
+        catchUpScans++;
+        scanPacer.awaitSettled(false, next);
+        return true;
     }
 
     private void showSummary() {
+        ScanStateStore.Snapshot state = scanState.getSnapshot();
         String message = "Scan Complete!\n\n" +
-                "📱 Numbers Detected: " + detectedNumbers.size() + "\n" +
-                "✅ Contacts Saved: " + savedCount + "\n" +
-                "⏭️ Unsaved Numbers: " + unsavedNumbers.size();
+                "📱 Numbers Detected: " + state.getDetectedCount() + "\n" +
+                "✅ Contacts Saved: " + state.getSavedCount() + "\n" +
+                "⏭️ Unsaved Numbers: " + state.getUnsavedCount();
         
         showToast(message);
         
         // Update floating window
-        FloatingWindowService floatingService = FloatingWindowService.getInstance();
-        if (floatingService != null) {
-            floatingService.showSummaryDialog(detectedNumbers.size(), savedCount, unsavedNumbers.size());
-        }
+        handler.post(() -> {
+            FloatingWindowService floatingService = FloatingWindowService.getInstance();
+            if (floatingService != null) {
+                floatingService.showSummaryDialog(state.getDetectedCount(), state.getSavedCount(),
+                        state.getUnsavedCount());
+            }
+        });
     }
 
     private void showToast(String message) {
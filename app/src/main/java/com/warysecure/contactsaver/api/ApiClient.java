@@ -4,45 +4,99 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.warysecure.contactsaver.models.ApiResponse;
 import com.warysecure.contactsaver.models.ContactStats;
-import com.warysecure.contactsaver.models.ServerContact;
 import com.warysecure.contactsaver.models.SyncResult;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 
+/**
+ * Client for the mobile API, shared by the whole process.
+ * One OkHttpClient (connection pool, dispatcher) and one Gson serve every
+ * caller, so warm requests reuse an open connection instead of paying a
+ * new TLS handshake. HTTP/2 is negotiated where the server offers it, and
+ * OkHttp asks for gzip and unzips responses transparently as long as no
+ * caller sets Accept-Encoding itself. The server URL and API key are
+ * reloaded whenever they change in the settings.
+ */
 public class ApiClient {
     private static final String PREFS_NAME = "settings";
+    private static final String DEFAULT_SERVER_URL = "https://joinus.cx";
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-    
-    private String serverUrl;
-    private String apiKey;
-    private OkHttpClient client;
-    private Gson gson;
 
-    public ApiClient(Context context) {
+    private static final OkHttpClient sharedClient = buildClient();
+    private static final Gson sharedGson = new Gson();
+    private static ApiClient instance;
+
+    private volatile String serverUrl;
+    private volatile String apiKey;
+    private final OkHttpClient client = sharedClient;
+    private final Gson gson = sharedGson;
+    // Kept as a field: SharedPreferences only holds listeners weakly
+    private final SharedPreferences.OnSharedPreferenceChangeListener prefsListener;
+
+    public static synchronized ApiClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new ApiClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ApiClient(Context context) {
         SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.serverUrl = prefs.getString("server_url", "https://joinus.cx");
+        loadConfig(prefs);
+        prefsListener = (sharedPreferences, key) -> {
+            if ("server_url".equals(key) || "api_key".equals(key)) {
+                loadConfig(sharedPreferences);
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(prefsListener);
+    }
+
+    /**
+     * A client for a fixed server that ignores the settings, for tests.
+     */
+    ApiClient(String serverUrl, String apiKey) {
+        this.serverUrl = serverUrl;
+        this.apiKey = apiKey;
+        this.prefsListener = null;
+    }
+
+    private void loadConfig(SharedPreferences prefs) {
+        this.serverUrl = prefs.getString("server_url", DEFAULT_SERVER_URL);
         this.apiKey = prefs.getString("api_key", "");
-        
-        this.client = new OkHttpClient.Builder()
+    }
+
+    private static OkHttpClient buildClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(4);
+
+        return new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
                 .build();
-        
-        this.gson = new Gson();
     }
 
     private String getApiUrl(String endpoint) {
@@ -79,41 +133,30 @@ public class ApiClient {
         }
     }
 
-    public List<ServerContact> getPendingContacts() {
-        List<ServerContact> contacts = new ArrayList<>();
-        
+    /**
+     * Stream one page of pending contacts as the body arrives, without buffering it.
+     * Servers that ignore the paging parameters return every pending contact.
+     *
+     * @param afterId Only contacts with a higher id; 0 for the first page
+     * @param limit Maximum number of contacts in the page
+     * @param callback Called for each contact, on the calling thread
+     * @return Whether the request succeeded; contacts already passed on stay passed on
+     */
+    public boolean getPendingContacts(int afterId, int limit, ContactJson.ContactCallback callback) {
         try {
-            Request request = getRequestBuilder(getApiUrl("contacts.php?action=pending")).build();
+            Request request = getRequestBuilder(getApiUrl(
+                    "contacts.php?action=pending&limit=" + limit + "&after_id=" + afterId)).build();
             
             try (Response response = client.newCall(request).execute()) {
                 if (response.isSuccessful() && response.body() != null) {
-                    String json = response.body().string();
-                    JsonObject obj = gson.fromJson(json, JsonObject.class);
-                    
-                    if (obj.has("success") && obj.get("success").getAsBoolean()) {
-                        if (obj.has("contacts")) {
-                            JsonArray contactsArray = obj.getAsJsonArray("contacts");
-                            for (int i = 0; i < contactsArray.size(); i++) {
-                                JsonObject contactObj = contactsArray.get(i).getAsJsonObject();
-                                ServerContact contact = new ServerContact();
-                                contact.id = contactObj.get("id").getAsInt();
-                                contact.applicationId = contactObj.has("application_id") ? contactObj.get("application_id").getAsInt() : 0;
-                                contact.phone = contactObj.get("phone").getAsString();
-                                contact.name = contactObj.has("name") && !contactObj.get("name").isJsonNull() ? contactObj.get("name").getAsString() : "";
-                                contact.email = contactObj.has("email") && !contactObj.get("email").isJsonNull() ? contactObj.get("email").getAsString() : "";
-                                contact.source = contactObj.has("source") ? contactObj.get("source").getAsString() : "";
-                                contact.createdAt = contactObj.has("created_at") ? contactObj.get("created_at").getAsString() : "";
-                                contacts.add(contact);
-                            }
-                        }
-                    }
+                    return ContactJson.readPendingContacts(response.body().charStream(), callback);
                 }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
         
-        return contacts;
+        return false;
     }
 
     public ContactStats getContactStats() {
@@ -178,30 +221,27 @@ public class ApiClient {
     }
 
     public ApiResponse bulkSync(List<SyncResult> results) {
+        return bulkSync(ContactJson.buildBulkSyncPayload(results), null);
+    }
+
+    /**
+     * Post a prepared bulk-sync payload once, without retrying.
+     *
+     * @param payload Body built by ContactJson.buildBulkSyncPayload
+     * @param idempotencyKey Sent as Idempotency-Key so the server can drop a repeated request, may be null
+     * @return The response, with its HTTP code and any Retry-After delay
+     */
+    public ApiResponse bulkSync(String payload, String idempotencyKey) {
         try {
-            JsonObject payload = new JsonObject();
-            JsonArray contactsArray = new JsonArray();
-            
-            for (SyncResult result : results) {
-                JsonObject contactObj = new JsonObject();
-                contactObj.addProperty("contact_id", result.contactId);
-                if (result.deviceContactId != null) {
-                    contactObj.addProperty("device_contact_id", result.deviceContactId);
-                } else {
-                    contactObj.add("device_contact_id", null);
-                }
-                contactObj.addProperty("status", result.status);
-                contactsArray.add(contactObj);
+            RequestBody body = RequestBody.create(payload, JSON);
+            Request.Builder builder = getRequestBuilder(getApiUrl("contacts.php?action=bulk-sync"))
+                    .post(body);
+            if (idempotencyKey != null) {
+                builder.header("Idempotency-Key", idempotencyKey);
             }
             
-            payload.add("contacts", contactsArray);
-            
-            RequestBody body = RequestBody.create(payload.toString(), JSON);
-            Request request = getRequestBuilder(getApiUrl("contacts.php?action=bulk-sync"))
-                    .post(body)
-                    .build();
-            
-            try (Response response = client.newCall(request).execute()) {
+            try (Response response = client.newCall(builder.build()).execute()) {
+                ApiResponse result;
                 if (response.isSuccessful() && response.body() != null) {
                     String json = response.body().string();
                     JsonObject obj = gson.fromJson(json, JsonObject.class);
@@ -210,16 +250,57 @@ public class ApiClient {
                     String message = obj.has("message") ? obj.get("message").getAsString() : "";
                     String error = obj.has("error") ? obj.get("error").getAsString() : "";
                     
-                    return new ApiResponse(success, message, error);
+                    result = new ApiResponse(success, message, error);
                 } else {
-                    return new ApiResponse(false, "", "HTTP " + response.code());
+                    result = new ApiResponse(false, "", "HTTP " + response.code());
                 }
+                result.httpCode = response.code();
+                result.retryAfterMs = parseRetryAfter(response.header("Retry-After"), System.currentTimeMillis());
+                return result;
             }
         } catch (IOException e) {
             return new ApiResponse(false, "", e.getMessage());
         }
     }
 
+    /**
+     * Parse a Retry-After header, either delay-seconds or an HTTP date.
+     * A delay too long for a long saturates at Long.MAX_VALUE rather than
+     * overflowing, so the caller's own cap still applies.
+     *
+     * @return The delay in milliseconds, or -1 if the header is missing or unreadable
+     */
+    static long parseRetryAfter(String value, long nowMs) {
+        if (value == null || value.trim().isEmpty()) return -1;
+        value = value.trim();
+        if (isDigits(value)) {
+            long seconds;
+            try {
+                seconds = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // More digits than a long holds
+                seconds = Long.MAX_VALUE;
+            }
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value);
+            return Math.max(0, date.getTime() - nowMs);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
     public ApiResponse addContact(String phone, String name) {
         try {
             JsonObject payload = new JsonObject();
@@ -0,0 +1,155 @@
+package com.warysecure.contactsaver.api;
+
+import android.util.Log;
+
+import com.warysecure.contactsaver.models.ApiResponse;
+import com.warysecure.contactsaver.models.SyncResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Reports sync results to the server with bulk-sync, reliably.
+ * Results go out in chunks of at most chunkSize results and
+ * MAX_CHUNK_BYTES of JSON. A chunk that fails for a transient reason
+ * (no response, 408, 429 or 5xx) is retried up to maxAttempts times,
+ * waiting as long as the server's Retry-After asks, or else an
+ * exponential backoff with full jitter. Each chunk carries an
+ * Idempotency-Key derived from its results, the same for every attempt
+ * and for a later run resending the same chunk from the outbox, so a
+ * request the server did process is not applied twice.
+ */
+public class BulkAckSender {
+    private static final String TAG = "BulkAckSender";
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 30000;
+    private static final long MAX_RETRY_AFTER_MS = 120000;
+
+    private final ApiClient apiClient;
+    private final int chunkSize;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final Random random = new Random();
+
+    /**
+     * What one send achieved.
+     */
+    public static class Outcome {
+        public int ackedCount;
+        public int requests;
+        // Results the server did not confirm, in order
+        public final List<SyncResult> unacked = new ArrayList<>();
+    }
+
+    public BulkAckSender(ApiClient apiClient, int chunkSize, int maxAttempts) {
+        this(apiClient, chunkSize, maxAttempts, BASE_BACKOFF_MS);
+    }
+
+    /**
+     * @param baseBackoffMs Backoff ceiling of the first retry; tests shorten it
+     */
+    BulkAckSender(ApiClient apiClient, int chunkSize, int maxAttempts, long baseBackoffMs) {
+        this.apiClient = apiClient;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseBackoffMs = Math.max(1, baseBackoffMs);
+    }
+
+    /**
+     * Send results, blocking through any retries.
+     * An interrupt stops the retries; the results not yet confirmed are returned as unacked.
+     */
+    public Outcome send(List<SyncResult> results) {
+        Outcome outcome = new Outcome();
+        for (int start = 0; start < results.size(); start += chunkSize) {
+            List<SyncResult> chunk = results.subList(start, Math.min(start + chunkSize, results.size()));
+            if (Thread.currentThread().isInterrupted()) {
+                outcome.unacked.addAll(chunk);
+            } else {
+                sendChunk(chunk, outcome);
+            }
+        }
+        return outcome;
+    }
+
+    private void sendChunk(List<SyncResult> chunk, Outcome outcome) {
+        String payload = ContactJson.buildBulkSyncPayload(chunk);
+        if (chunk.size() > 1 && payload.getBytes(StandardCharsets.UTF_8).length > MAX_CHUNK_BYTES) {
+            // Too big for one request, send each half on its own
+            int half = chunk.size() / 2;
+            sendChunk(chunk.subList(0, half), outcome);
+            sendChunk(chunk.subList(half, chunk.size()), outcome);
+            return;
+        }
+
+        String idempotencyKey = idempotencyKey(chunk);
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            ApiResponse response;
+            try {
+                outcome.requests++;
+                response = apiClient.bulkSync(payload, idempotencyKey);
+            } catch (Exception e) {
+                // E.g. a body that is not JSON; treat as no usable response
+                response = new ApiResponse(false, "", e.getMessage());
+            }
+
+            if (response.success) {
+                outcome.ackedCount += chunk.size();
+                return;
+            }
+            if (!isRetryable(response) || attempt == maxAttempts) {
+                Log.e(TAG, "Bulk sync of " + chunk.size() + " results failed: " + response.error);
+                break;
+            }
+
+            long delay = response.retryAfterMs >= 0
+                    ? Math.min(response.retryAfterMs, MAX_RETRY_AFTER_MS)
+                    : backoffMs(attempt);
+            Log.d(TAG, "Bulk sync attempt " + attempt + " failed (" + response.error + "), retrying in " + delay + " ms");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        outcome.unacked.addAll(chunk);
+    }
+
+    /**
+     * Key of a chunk for the server to drop repeats by: a name-based UUID of
+     * its results sorted by contact id, so the same results give the same key
+     * in any order.
+     */
+    static String idempotencyKey(List<SyncResult> chunk) {
+        List<SyncResult> sorted = new ArrayList<>(chunk);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.contactId, b.contactId));
+        StringBuilder key = new StringBuilder();
+        for (SyncResult result : sorted) {
+            key.append(result.contactId).append('\0')
+                    .append(result.deviceContactId).append('\0')
+                    .append(result.status).append('\n');
+        }
+        return UUID.nameUUIDFromBytes(key.toString().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static boolean isRetryable(ApiResponse response) {
+        int code = response.httpCode;
+        return code == 0 || code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Full jitter: a random delay up to the exponential backoff for this attempt.
+     */
+    private long backoffMs(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, baseBackoffMs << Math.min(attempt - 1, 16));
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
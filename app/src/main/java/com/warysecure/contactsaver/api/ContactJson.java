@@ -0,0 +1,158 @@
+package com.warysecure.contactsaver.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.warysecure.contactsaver.models.ServerContact;
+import com.warysecure.contactsaver.models.SyncResult;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON mapping for the contacts endpoints.
+ * Plain Java with no Android dependency, so the benchmark module can run it on the JVM.
+ */
+public class ContactJson {
+
+    private ContactJson() {
+    }
+
+    /**
+     * Receives contacts one at a time as they are parsed.
+     */
+    public interface ContactCallback {
+        void onContact(ServerContact contact);
+    }
+
+    /**
+     * Stream a contacts.php?action=pending response body.
+     * Only the contact being read is held in memory, whatever the size of the body.
+     *
+     * @param body The response body, e.g. ResponseBody.charStream(); not closed
+     * @param callback Called for each contact with a phone number, in order
+     * @return Whether the response reported success
+     */
+    public static boolean readPendingContacts(Reader body, ContactCallback callback) throws IOException {
+        JsonReader reader = new JsonReader(body);
+        boolean success = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("success") && reader.peek() == JsonToken.BOOLEAN) {
+                success = reader.nextBoolean();
+            } else if (name.equals("contacts") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    ServerContact contact = readContact(reader);
+                    // A contact without a phone cannot be saved
+                    if (contact.phone != null) {
+                        callback.onContact(contact);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return success;
+    }
+
+    /**
+     * Parse a whole contacts.php?action=pending response body.
+     *
+     * @param json The response body
+     * @return The pending contacts, empty if the response is not successful
+     */
+    public static List<ServerContact> parsePendingContacts(String json) {
+        List<ServerContact> contacts = new ArrayList<>();
+        try {
+            if (!readPendingContacts(new StringReader(json), contacts::add)) {
+                contacts.clear();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            contacts.clear();
+        }
+        return contacts;
+    }
+
+    private static ServerContact readContact(JsonReader reader) throws IOException {
+        ServerContact contact = new ServerContact();
+        contact.name = "";
+        contact.email = "";
+        contact.source = "";
+        contact.createdAt = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    contact.id = reader.nextInt();
+                    break;
+                case "application_id":
+                    contact.applicationId = reader.nextInt();
+                    break;
+                case "phone":
+                    contact.phone = reader.nextString();
+                    break;
+                case "name":
+                    contact.name = reader.nextString();
+                    break;
+                case "email":
+                    contact.email = reader.nextString();
+                    break;
+                case "source":
+                    contact.source = reader.nextString();
+                    break;
+                case "created_at":
+                    contact.createdAt = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        return contact;
+    }
+
+    /**
+     * Build the request body for contacts.php?action=bulk-sync.
+     *
+     * @param results The sync results to report
+     * @return The JSON payload
+     */
+    public static String buildBulkSyncPayload(List<SyncResult> results) {
+        JsonObject payload = new JsonObject();
+        JsonArray contactsArray = new JsonArray();
+
+        for (SyncResult result : results) {
+            JsonObject contactObj = new JsonObject();
+            contactObj.addProperty("contact_id", result.contactId);
+            if (result.deviceContactId != null) {
+                contactObj.addProperty("device_contact_id", result.deviceContactId);
+            } else {
+                contactObj.add("device_contact_id", null);
+            }
+            contactObj.addProperty("status", result.status);
+            contactsArray.add(contactObj);
+        }
+
+        payload.add("contacts", contactsArray);
+        return payload.toString();
+    }
+}
@@ -0,0 +1,273 @@
+package com.warysecure.contactsaver.api;
+
+import android.util.Log;
+
+import com.warysecure.contactsaver.models.ServerContact;
+import com.warysecure.contactsaver.models.SyncResult;
+import com.warysecure.contactsaver.utils.ServerContactSaver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server sync as a three-stage pipeline over pages of pending contacts.
+ * - fetch: the calling thread reads page N+1 (contacts.php?action=pending, paged by id)
+ * - save: a worker thread writes page N to the contacts provider and its
+ *   results to the SyncOutbox
+ * - ack: a second worker thread drains the outbox with bulk-sync, see BulkAckSender
+ *
+ * Each hand-over queue holds one page, so memory stays at a few pages
+ * whatever the size of the queue on the server, and network and disk
+ * work overlap. Every page is acked as soon as it is saved, so a sync
+ * that dies midway keeps the acks of the pages it finished. Results the
+ * server does not confirm stay in the outbox; each run sends what earlier
+ * runs left there before fetching its first page, so the server no longer
+ * lists those contacts as pending and they are not saved a second time.
+ */
+public class ContactSyncPipeline {
+    private static final String TAG = "ContactSyncPipeline";
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    // How long an interrupted run waits for its worker threads
+    private static final long STOP_TIMEOUT_MS = 5000;
+
+    // Marks the end of a queue; compared by identity
+    private static final List<ServerContact> END_OF_PAGES = new ArrayList<>();
+    private static final List<SyncResult> END_OF_RESULTS = new ArrayList<>();
+    private static final List<SyncResult> IN_OUTBOX = new ArrayList<>();
+
+    private final ApiClient apiClient;
+    private final PageSaver contactSaver;
+    private final SyncOutbox outbox;
+    private final BulkAckSender ackSender;
+    private final int pageSize;
+
+    /**
+     * Outcome of one sync run.
+     */
+    public static class Summary {
+        public int pages;
+        public int savedCount;
+        public int failedCount;
+        // Results the server has not confirmed yet; those in the outbox go out next run
+        public long unackedCount;
+        // A page could not be fetched; the pages before it were still processed
+        public boolean fetchFailed;
+
+        public boolean isEmpty() {
+            return savedCount == 0 && failedCount == 0;
+        }
+    }
+
+    /**
+     * Writes one page of server contacts to the device, one result per contact.
+     */
+    interface PageSaver {
+        List<SyncResult> saveContacts(List<ServerContact> contacts);
+    }
+
+    public ContactSyncPipeline(ApiClient apiClient, ServerContactSaver contactSaver, SyncOutbox outbox,
+                               int pageSize) {
+        this(apiClient, contactSaver::saveContacts, outbox, pageSize);
+    }
+
+    ContactSyncPipeline(ApiClient apiClient, PageSaver contactSaver, SyncOutbox outbox, int pageSize) {
+        this.apiClient = apiClient;
+        this.contactSaver = contactSaver;
+        this.outbox = outbox;
+        this.ackSender = new BulkAckSender(apiClient, BulkAckSender.DEFAULT_CHUNK_SIZE,
+                BulkAckSender.DEFAULT_MAX_ATTEMPTS);
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Sync every pending contact. Blocks until all pages are saved and acked.
+     * An interrupt stops the run; the worker threads are interrupted and
+     * waited for, up to STOP_TIMEOUT_MS, before it returns.
+     */
+    public Summary run() {
+        Summary summary = new Summary();
+        BlockingQueue<List<ServerContact>> pages = new ArrayBlockingQueue<>(1);
+        BlockingQueue<List<SyncResult>> results = new ArrayBlockingQueue<>(1);
+
+        // What earlier runs could not deliver goes first
+        boolean delivering = drainOutbox();
+
+        Thread saveThread = new Thread(() -> runSaver(pages, results, summary), "sync-save");
+        Thread ackThread = new Thread(() -> runAcker(results, delivering, summary), "sync-ack");
+        saveThread.start();
+        ackThread.start();
+
+        try {
+            fetchPages(pages, summary);
+            pages.put(END_OF_PAGES);
+            saveThread.join();
+            ackThread.join();
+        } catch (InterruptedException e) {
+            saveThread.interrupt();
+            ackThread.interrupt();
+            // They still use the outbox and the summary; give them a moment to let go
+            joinAll(STOP_TIMEOUT_MS, saveThread, ackThread);
+            Thread.currentThread().interrupt();
+        }
+
+        Log.d(TAG, "Sync done: " + summary.pages + " pages, " + summary.savedCount + " saved, "
+                + summary.failedCount + " failed, " + summary.unackedCount + " not acked");
+        return summary;
+    }
+
+    private void fetchPages(BlockingQueue<List<ServerContact>> pages, Summary summary) throws InterruptedException {
+        int afterId = 0;
+        while (true) {
+            int cursor = afterId;
+            List<ServerContact> page = new ArrayList<>();
+            // Drop contacts before the cursor, in case the server ignores it
+            boolean success = apiClient.getPendingContacts(cursor, pageSize, contact -> {
+                if (contact.id > cursor) {
+                    page.add(contact);
+                }
+            });
+            if (!success) {
+                Log.e(TAG, "Error fetching page after id " + cursor);
+                summary.fetchFailed = true;
+                return;
+            }
+            if (page.isEmpty()) return;
+
+            for (ServerContact contact : page) {
+                afterId = Math.max(afterId, contact.id);
+            }
+            summary.pages++;
+            pages.put(page);
+
+            // A short page is the last one
+            if (page.size() < pageSize) return;
+        }
+    }
+
+    private void runSaver(BlockingQueue<List<ServerContact>> pages, BlockingQueue<List<SyncResult>> results,
+                          Summary summary) {
+        try {
+            while (true) {
+                List<ServerContact> page = pages.take();
+                if (page == END_OF_PAGES) break;
+
+                List<SyncResult> saved;
+                try {
+                    saved = contactSaver.saveContacts(page);
+                } catch (Exception e) {
+                    // Not acked, so the page stays pending and comes back next run
+                    Log.e(TAG, "Error saving page: " + e.getMessage());
+                    continue;
+                }
+                for (SyncResult result : saved) {
+                    if ("synced".equals(result.status)) {
+                        summary.savedCount++;
+                    } else {
+                        summary.failedCount++;
+                    }
+                }
+                List<SyncResult> toAck = IN_OUTBOX;
+                try {
+                    // Durable before any ack is attempted
+                    outbox.add(saved);
+                } catch (RuntimeException e) {
+                    // E.g. SQLiteException: acked from memory instead, just not kept for a retry
+                    Log.e(TAG, "Error storing results in outbox: " + e.getMessage());
+                    toAck = saved;
+                }
+                results.put(toAck);
+            }
+            results.put(END_OF_RESULTS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param delivering Whether the outbox was drained before the fetch; if not, nothing is sent this run
+     */
+    private void runAcker(BlockingQueue<List<SyncResult>> results, boolean delivering, Summary summary) {
+        int unstoredUnacked = 0;
+        try {
+            while (true) {
+                List<SyncResult> page = results.take();
+                if (page == END_OF_RESULTS) break;
+
+                // Once the server stops confirming, stop retrying for this
+                // run and leave the rest of the outbox for the next one
+                if (page == IN_OUTBOX) {
+                    if (delivering) {
+                        delivering = drainOutbox();
+                    }
+                } else if (delivering) {
+                    BulkAckSender.Outcome outcome = ackSender.send(page);
+                    unstoredUnacked += outcome.unacked.size();
+                    delivering = outcome.unacked.isEmpty();
+                } else {
+                    unstoredUnacked += page.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        summary.unackedCount = safeOutboxSize() + unstoredUnacked;
+    }
+
+    /**
+     * Send everything in the outbox, one chunk-sized batch at a time.
+     *
+     * @return false if the server did not confirm a batch
+     */
+    private boolean drainOutbox() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                SyncOutbox.Batch batch = outbox.next(BulkAckSender.DEFAULT_CHUNK_SIZE);
+                if (batch.isEmpty()) return true;
+
+                BulkAckSender.Outcome outcome = ackSender.send(batch.results);
+                outbox.confirm(batch, outcome.unacked);
+                if (!outcome.unacked.isEmpty()) return false;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error draining outbox: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Wait for threads to end, up to timeoutMs in all, through any interrupt.
+     */
+    private static void joinAll(long timeoutMs, Thread... threads) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                long leftMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (leftMs <= 0) {
+                    Log.e(TAG, thread.getName() + " still running after the sync was interrupted");
+                    break;
+                }
+                try {
+                    thread.join(leftMs);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private long safeOutboxSize() {
+        try {
+            return outbox.size();
+        } catch (Exception e) {
+            Log.e(TAG, "Error reading outbox: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.warysecure.contactsaver.api;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.warysecure.contactsaver.models.SyncResult;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-device outbox of sync results the server has not confirmed yet.
+ * Results are stored as soon as their contacts are written to the device,
+ * before any ack is sent, and deleted only once bulk-sync confirms them.
+ * A failed ack therefore leaves them here for the next run to send again,
+ * rather than leaving the contacts pending on the server to be fetched
+ * and saved all over again.
+ *
+ * One row per server contact: a newer result replaces an older one.
+ * Safe to use from several threads.
+ */
+public class SyncOutbox extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "sync_outbox.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "outbox";
+
+    private static SyncOutbox instance;
+
+    /**
+     * Results read from the outbox, to be confirmed or left in place.
+     */
+    public static class Batch {
+        public final List<SyncResult> results = new ArrayList<>();
+        final List<Long> rowIds = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return results.isEmpty();
+        }
+    }
+
+    public static synchronized SyncOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new SyncOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Not private so tests can substitute an in-memory outbox
+    SyncOutbox(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "contact_id INTEGER NOT NULL UNIQUE, "
+                + "device_contact_id TEXT, "
+                + "status TEXT NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * Store results in one transaction.
+     */
+    public void add(List<SyncResult> results) {
+        if (results.isEmpty()) return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE
+                + " (contact_id, device_contact_id, status) VALUES (?, ?, ?)")) {
+            for (SyncResult result : results) {
+                insert.bindLong(1, result.contactId);
+                if (result.deviceContactId != null) {
+                    insert.bindString(2, result.deviceContactId);
+                } else {
+                    insert.bindNull(2);
+                }
+                insert.bindString(3, result.status);
+                insert.executeInsert();
+                insert.clearBindings();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Read the oldest results, leaving them in the outbox.
+     *
+     * @param limit Maximum number of results
+     */
+    public Batch next(int limit) {
+        Batch batch = new Batch();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT _id, contact_id, device_contact_id, status FROM "
+                + TABLE + " ORDER BY _id LIMIT " + Math.max(1, limit), null)) {
+            while (cursor.moveToNext()) {
+                batch.rowIds.add(cursor.getLong(0));
+                batch.results.add(new SyncResult(cursor.getInt(1),
+                        cursor.isNull(2) ? null : cursor.getString(2), cursor.getString(3)));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Delete the results of a batch the server confirmed.
+     * Rows replaced by a newer result since the batch was read are kept.
+     *
+     * @param batch A batch from next()
+     * @param unconfirmed Results of the batch the server did not confirm; they stay
+     */
+    public void confirm(Batch batch, List<SyncResult> unconfirmed) {
+        Map<SyncResult, Boolean> keep = new IdentityHashMap<>();
+        for (SyncResult result : unconfirmed) {
+            keep.put(result, Boolean.TRUE);
+        }
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE + " WHERE _id = ?")) {
+            for (int i = 0; i < batch.results.size(); i++) {
+                if (keep.containsKey(batch.results.get(i))) continue;
+                delete.bindLong(1, batch.rowIds.get(i));
+                delete.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public long size() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE);
+    }
+}
@@ -4,6 +4,10 @@ public class ApiResponse {
     public boolean success;
     public String message;
     public String error;
+    // HTTP status code, 0 if no response arrived
+    public int httpCode;
+    // Delay the server asked for with Retry-After, -1 if none
+    public long retryAfterMs = -1;
 
     public ApiResponse() {
     }
@@ -2,7 +2,7 @@ package com.warysecure.contactsaver.models;
 
 public class SyncResult {
     public int contactId;
-    public String deviceContactId;
+    public String deviceContactId; // LOOKUP_KEY of the device contact
     public String status; // "synced", "failed", "deleted"
 
     public SyncResult() {
@@ -0,0 +1,170 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.graphics.Rect;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import com.warysecure.contactsaver.utils.LongHashSet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-session memory of the nodes and list rows a scan has already read.
+ * A node fingerprint is built from what the node carries locally, so it
+ * costs no IPC: view id, width, height and left edge, text and content
+ * description hashes, and child count. The top edge is left out on
+ * purpose, so a row that a scroll only moved up still matches.
+ *
+ * A row's subtree fingerprint combines the fingerprints of every node in
+ * the row, in pre-order, so it covers every text at any depth. Once a row
+ * has been walked completely, a later row with the same subtree
+ * fingerprint has the same texts and can be skipped whole.
+ *
+ * Fetching a row's subtree costs one IPC per node, so rows are also
+ * remembered by a row key read from the row node alone (see rowKey). Once
+ * two complete reads of a row agree, a row with the same key is skipped
+ * without fetching anything below it. A row changed in place after that,
+ * without moving, is not seen again until the cache is cleared.
+ */
+public class NodeFingerprintCache {
+    private final LongHashSet seenTexts = new LongHashSet();
+    private final LongHashSet seenSubtrees = new LongHashSet();
+    private final Map<Long, RowRecord> rows = new HashMap<>();
+    private final Rect bounds = new Rect();
+
+    /**
+     * What the complete reads of one row found.
+     */
+    static class RowRecord {
+        long subtreeFingerprint;
+        long textFingerprint;
+        // The last two complete reads agreed, so the row is no longer being bound
+        boolean confirmed;
+    }
+
+    /**
+     * Fingerprint of a single node, from its local fields only.
+     */
+    public long fingerprint(AccessibilityNodeInfo node) {
+        node.getBoundsInScreen(bounds);
+        long hash = hash(node.getViewIdResourceName());
+        hash = hash * 31 + bounds.left;
+        hash = hash * 31 + bounds.width();
+        hash = hash * 31 + bounds.height();
+        hash = hash * 31 + hash(node.getText());
+        hash = hash * 31 + hash(node.getContentDescription());
+        hash = hash * 31 + node.getChildCount();
+        return mix(hash);
+    }
+
+    /**
+     * Key of a list row from the row node alone, at no IPC: the view behind
+     * it (its source and window), its fingerprint, and its adapter position,
+     * or its top edge where the list reports none. A view the list recycled
+     * for another item has another position, so it gets another key.
+     */
+    public long rowKey(AccessibilityNodeInfo row) {
+        long position;
+        AccessibilityNodeInfo.CollectionItemInfo item = row.getCollectionItemInfo();
+        if (item != null) {
+            position = item.getRowIndex();
+        } else {
+            row.getBoundsInScreen(bounds);
+            // Kept apart from the row indexes
+            position = (1L << 32) | (bounds.top & 0xffffffffL);
+        }
+        long hash = combine(row.hashCode(), row.getWindowId());
+        hash = combine(hash, fingerprint(row));
+        return combine(hash, position);
+    }
+
+    /**
+     * Fingerprint of a node's text and content description alone, 0 if it has neither.
+     */
+    public static long textFingerprint(AccessibilityNodeInfo node) {
+        CharSequence text = node.getText();
+        CharSequence description = node.getContentDescription();
+        if (text == null && description == null) return 0;
+        return mix(hash(text) * 31L + hash(description));
+    }
+
+    /**
+     * Fold a child's fingerprint into its parent's.
+     */
+    public static long combine(long parent, long child) {
+        return mix(parent * 31 + child);
+    }
+
+    /**
+     * Record that a node's text is being read.
+     *
+     * @return false if a node with the same fingerprint was read before this session
+     */
+    public boolean markTextSeen(long fingerprint) {
+        return seenTexts.add(fingerprint);
+    }
+
+    public boolean hasSubtree(long subtreeFingerprint) {
+        return seenSubtrees.contains(subtreeFingerprint);
+    }
+
+    /**
+     * Record a row whose whole subtree has been read.
+     */
+    public void addSubtree(long subtreeFingerprint) {
+        seenSubtrees.add(subtreeFingerprint);
+    }
+
+    /**
+     * The record of a row that can be skipped unfetched.
+     *
+     * @return The record if the last two complete reads of the row agreed, else null
+     */
+    RowRecord confirmedRow(long rowKey) {
+        RowRecord record = rows.get(rowKey);
+        return record != null && record.confirmed ? record : null;
+    }
+
+    /**
+     * Record a complete read of a row.
+     */
+    void recordRow(long rowKey, long subtreeFingerprint, long textFingerprint) {
+        RowRecord record = rows.get(rowKey);
+        if (record == null) {
+            record = new RowRecord();
+            rows.put(rowKey, record);
+        } else {
+            record.confirmed = record.subtreeFingerprint == subtreeFingerprint;
+        }
+        record.subtreeFingerprint = subtreeFingerprint;
+        record.textFingerprint = textFingerprint;
+    }
+
+    public void clear() {
+        seenTexts.clear();
+        seenSubtrees.clear();
+        rows.clear();
+    }
+
+    /**
+     * Same as String.hashCode() without converting the CharSequence.
+     */
+    private static int hash(CharSequence text) {
+        if (text == null) return 0;
+        int hash = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    // Finalizer from MurmurHash3, spreads the 31-multiplier sums over all 64 bits
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,420 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.os.SystemClock;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Iterative, budgeted walk of the accessibility tree.
+ * Every getChild() and view-id lookup is a binder round trip, so a scan
+ * first looks for the list container and walks only its visible rows.
+ * The container is found by view id (the ids below, plus any id learned
+ * from an earlier scan), or failing that by the first scrollable node.
+ * Without a container the whole window is walked.
+ *
+ * Each scan stops once it has visited nodeBudget nodes or run for
+ * timeBudgetMs, and reports its node and IPC counts.
+ *
+ * With a NodeFingerprintCache, nodes whose text was already read this
+ * session are not passed to the visitor again. A list row whose key (see
+ * NodeFingerprintCache.rowKey) belongs to a row read alike twice is not
+ * fetched beyond the row node, so a scan after a scroll fetches roughly the
+ * rows it has not read yet. Other rows are fetched whole, and not visited
+ * again if their subtree was already read.
+ */
+public class NodeTraversal {
+    public static final int DEFAULT_NODE_BUDGET = 1500;
+    public static final long DEFAULT_TIME_BUDGET_MS = 150;
+    // RecyclerView/ListView ids known to hold the chat list
+    private static final String[] LIST_VIEW_IDS = {"android:id/list"};
+
+    private final int nodeBudget;
+    private final long timeBudgetMs;
+    private final ArrayDeque<AccessibilityNodeInfo> stack = new ArrayDeque<>();
+    private final List<AccessibilityNodeInfo> rowNodes = new ArrayList<>();
+    private NodeFingerprintCache fingerprintCache;
+    private String learnedViewId;
+
+    private final Stats lastScan = new Stats();
+    private final Stats session = new Stats();
+
+    /**
+     * Visits one node. The node is recycled after the call, so keep nothing from it.
+     */
+    public interface Visitor {
+        void visit(AccessibilityNodeInfo node);
+    }
+
+    /**
+     * Counters of one scan, or summed over a session.
+     */
+    public static class Stats {
+        public int scans;
+        public int nodesVisited;
+        public int ipcCalls;
+        public int budgetExceeded;
+        public int listContainerScans;
+        public int rowsSkipped;
+        // Rows fetched and read to the end
+        public int rowsRead;
+        public int textsSkipped;
+        public long elapsedMs;
+        // Order-sensitive hash of every visible text, rows skipped as already read included,
+        // so a row still being bound changes it; 0 without a fingerprint cache. Last scan only
+        public long contentFingerprint;
+        // Hash of the texts of the first and last visible rows, to tell whether a scroll
+        // moved the list; the content fingerprint when there is no list. Last scan only
+        public long movementFingerprint;
+
+        void clear() {
+            scans = 0;
+            nodesVisited = 0;
+            ipcCalls = 0;
+            budgetExceeded = 0;
+            listContainerScans = 0;
+            rowsSkipped = 0;
+            rowsRead = 0;
+            textsSkipped = 0;
+            elapsedMs = 0;
+            contentFingerprint = 0;
+            movementFingerprint = 0;
+        }
+
+        void add(Stats other) {
+            scans += other.scans;
+            nodesVisited += other.nodesVisited;
+            ipcCalls += other.ipcCalls;
+            budgetExceeded += other.budgetExceeded;
+            listContainerScans += other.listContainerScans;
+            rowsSkipped += other.rowsSkipped;
+            rowsRead += other.rowsRead;
+            textsSkipped += other.textsSkipped;
+            elapsedMs += other.elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return "scans=" + scans + " nodes=" + nodesVisited + " ipc=" + ipcCalls
+                    + " overBudget=" + budgetExceeded + " listScans=" + listContainerScans
+                    + " rowsSkipped=" + rowsSkipped + " rowsRead=" + rowsRead + " textsSkipped=" + textsSkipped
+                    + " ms=" + elapsedMs;
+        }
+    }
+
+    public NodeTraversal(int nodeBudget, long timeBudgetMs) {
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetMs = timeBudgetMs;
+    }
+
+    /**
+     * Skip nodes and rows already read, as recorded in the cache. Null to read everything.
+     */
+    public void setFingerprintCache(NodeFingerprintCache fingerprintCache) {
+        this.fingerprintCache = fingerprintCache;
+    }
+
+    /**
+     * Walk the list rows of a window, or the whole window if it has no list.
+     *
+     * @param root The window root; stays owned by the caller
+     * @param visitor Called for each visited node
+     * @return Counters of this scan, valid until the next call
+     */
+    public Stats traverse(AccessibilityNodeInfo root, Visitor visitor) {
+        lastScan.clear();
+        lastScan.scans = 1;
+        long start = SystemClock.uptimeMillis();
+        long deadline = start + timeBudgetMs;
+
+        AccessibilityNodeInfo container = findListContainer(root, deadline);
+        if (container != null) {
+            lastScan.listContainerScans = 1;
+            walkVisibleRows(container, visitor, deadline);
+            if (container != root) {
+                container.recycle();
+            }
+        } else {
+            walk(root, false, visitor, deadline);
+            lastScan.movementFingerprint = lastScan.contentFingerprint;
+        }
+
+        lastScan.elapsedMs = SystemClock.uptimeMillis() - start;
+        session.add(lastScan);
+        return lastScan;
+    }
+
+    /**
+     * Counters summed since the last reset.
+     */
+    public Stats getSessionStats() {
+        return session;
+    }
+
+    public void reset() {
+        session.clear();
+    }
+
+    /**
+     * Find the list container of a window, e.g. to scroll it.
+     *
+     * @param root The window root; stays owned by the caller
+     * @return The container, owned by the caller (may be root itself), or null
+     */
+    public AccessibilityNodeInfo findListContainer(AccessibilityNodeInfo root) {
+        int ipcBefore = lastScan.ipcCalls;
+        AccessibilityNodeInfo container = findListContainer(root, SystemClock.uptimeMillis() + timeBudgetMs);
+        session.ipcCalls += lastScan.ipcCalls - ipcBefore;
+        return container;
+    }
+
+    private AccessibilityNodeInfo findListContainer(AccessibilityNodeInfo root, long deadline) {
+        if (learnedViewId != null) {
+            AccessibilityNodeInfo node = findByViewId(root, learnedViewId);
+            if (node != null) return node;
+        }
+        for (String viewId : LIST_VIEW_IDS) {
+            if (viewId.equals(learnedViewId)) continue;
+            AccessibilityNodeInfo node = findByViewId(root, viewId);
+            if (node != null) return node;
+        }
+
+        AccessibilityNodeInfo node = findScrollable(root, deadline);
+        if (node != null && node.getViewIdResourceName() != null) {
+            // Next scans find it with one lookup instead of a tree search
+            learnedViewId = node.getViewIdResourceName();
+        }
+        return node;
+    }
+
+    private AccessibilityNodeInfo findByViewId(AccessibilityNodeInfo root, String viewId) {
+        lastScan.ipcCalls++;
+        List<AccessibilityNodeInfo> nodes = root.findAccessibilityNodeInfosByViewId(viewId);
+        if (nodes == null || nodes.isEmpty()) return null;
+
+        AccessibilityNodeInfo found = null;
+        for (AccessibilityNodeInfo node : nodes) {
+            if (found == null && node.isVisibleToUser()) {
+                found = node;
+            } else {
+                node.recycle();
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Breadth-first search for the first scrollable node, within the budgets.
+     */
+    private AccessibilityNodeInfo findScrollable(AccessibilityNodeInfo root, long deadline) {
+        if (root.isScrollable()) return root;
+
+        ArrayDeque<AccessibilityNodeInfo> queue = new ArrayDeque<>();
+        AccessibilityNodeInfo found = null;
+        int searched = 0;
+        addChildren(root, queue, false);
+        while (!queue.isEmpty()) {
+            AccessibilityNodeInfo node = queue.pollFirst();
+            if (found == null && node.isScrollable()) {
+                found = node;
+                continue;
+            }
+            if (found == null && ++searched < nodeBudget && SystemClock.uptimeMillis() < deadline) {
+                addChildren(node, queue, false);
+            }
+            node.recycle();
+        }
+        return found;
+    }
+
+    private void walkVisibleRows(AccessibilityNodeInfo container, Visitor visitor, long deadline) {
+        long firstRowTexts = 0;
+        long lastRowTexts = 0;
+        boolean anyRow = false;
+        int childCount = container.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            if (overBudget(deadline)) {
+                lastScan.budgetExceeded = 1;
+                break;
+            }
+            lastScan.ipcCalls++;
+            AccessibilityNodeInfo row = container.getChild(i);
+            if (row == null) continue;
+            if (!row.isVisibleToUser()) {
+                row.recycle();
+                continue;
+            }
+            lastRowTexts = walkRow(row, visitor, deadline);
+            if (!anyRow) {
+                firstRowTexts = lastRowTexts;
+                anyRow = true;
+            }
+        }
+        // Layout alone can match across pages of look-alike rows; their texts cannot
+        lastScan.movementFingerprint = anyRow ? NodeFingerprintCache.combine(firstRowTexts, lastRowTexts) : 0;
+    }
+
+    /**
+     * Walk a list row, unless it is known by its row key or its subtree was read before.
+     * A row known by its key is not fetched further. Otherwise the whole row
+     * is fetched: its fingerprint covers every node in it, so rows that share
+     * a layout but not their texts never match.
+     *
+     * @param row Recycled here
+     * @return Hash of the row's texts alone
+     */
+    private long walkRow(AccessibilityNodeInfo row, Visitor visitor, long deadline) {
+        long rowKey = 0;
+        if (fingerprintCache != null) {
+            rowKey = fingerprintCache.rowKey(row);
+            NodeFingerprintCache.RowRecord known = fingerprintCache.confirmedRow(rowKey);
+            if (known != null) {
+                lastScan.nodesVisited++;
+                lastScan.rowsSkipped++;
+                lastScan.contentFingerprint = NodeFingerprintCache.combine(lastScan.contentFingerprint,
+                        known.subtreeFingerprint);
+                row.recycle();
+                return known.textFingerprint;
+            }
+        }
+
+        boolean complete = collectRow(row, deadline);
+        long rowTexts = 0;
+        for (AccessibilityNodeInfo node : rowNodes) {
+            rowTexts = NodeFingerprintCache.combine(rowTexts, NodeFingerprintCache.textFingerprint(node));
+        }
+        if (complete) {
+            lastScan.rowsRead++;
+        }
+        if (fingerprintCache == null) {
+            for (AccessibilityNodeInfo node : rowNodes) {
+                visitNode(node, visitor);
+            }
+            if (!complete) {
+                lastScan.budgetExceeded = 1;
+            }
+            recycleRow();
+            return rowTexts;
+        }
+
+        long subtreeFingerprint = 0;
+        for (AccessibilityNodeInfo node : rowNodes) {
+            subtreeFingerprint = NodeFingerprintCache.combine(subtreeFingerprint, fingerprintCache.fingerprint(node));
+        }
+
+        lastScan.contentFingerprint = NodeFingerprintCache.combine(lastScan.contentFingerprint, subtreeFingerprint);
+        if (complete && fingerprintCache.hasSubtree(subtreeFingerprint)) {
+            lastScan.rowsSkipped++;
+        } else {
+            for (AccessibilityNodeInfo node : rowNodes) {
+                visitNode(node, visitor);
+            }
+            if (complete) {
+                fingerprintCache.addSubtree(subtreeFingerprint);
+            } else {
+                lastScan.budgetExceeded = 1;
+            }
+        }
+        if (complete) {
+            fingerprintCache.recordRow(rowKey, subtreeFingerprint, rowTexts);
+        }
+        recycleRow();
+        return rowTexts;
+    }
+
+    private void recycleRow() {
+        for (AccessibilityNodeInfo node : rowNodes) {
+            node.recycle();
+        }
+        rowNodes.clear();
+    }
+
+    /**
+     * Fetch a row and all its descendants into rowNodes, in pre-order.
+     *
+     * @return false if the budget ran out before the whole row was fetched
+     */
+    private boolean collectRow(AccessibilityNodeInfo row, long deadline) {
+        boolean complete = true;
+        stack.push(row);
+        while (!stack.isEmpty()) {
+            AccessibilityNodeInfo node = stack.pop();
+            if (!complete || overBudget(deadline)) {
+                complete = false;
+                node.recycle();
+                continue;
+            }
+            lastScan.nodesVisited++;
+            rowNodes.add(node);
+            addChildren(node, stack, true);
+        }
+        return complete;
+    }
+
+    private void visitNode(AccessibilityNodeInfo node, Visitor visitor) {
+        if (fingerprintCache != null && (node.getText() != null || node.getContentDescription() != null)) {
+            long fingerprint = fingerprintCache.fingerprint(node);
+            if (!fingerprintCache.markTextSeen(fingerprint)) {
+                lastScan.textsSkipped++;
+                return;
+            }
+        }
+        visitor.visit(node);
+    }
+
+    /**
+     * Pre-order walk of a window without a list, with an explicit stack.
+     * Every text goes into the content fingerprint, read before or not.
+     *
+     * @param start The subtree root
+     * @param recycleStart Whether the walk owns start and recycles it
+     */
+    private void walk(AccessibilityNodeInfo start, boolean recycleStart, Visitor visitor, long deadline) {
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            AccessibilityNodeInfo node = stack.pop();
+            if (overBudget(deadline)) {
+                lastScan.budgetExceeded = 1;
+            } else {
+                lastScan.nodesVisited++;
+                if (fingerprintCache != null && (node.getText() != null || node.getContentDescription() != null)) {
+                    lastScan.contentFingerprint = NodeFingerprintCache.combine(lastScan.contentFingerprint,
+                            fingerprintCache.fingerprint(node));
+                }
+                visitNode(node, visitor);
+                addChildren(node, stack, true);
+            }
+            if (node != start || recycleStart) {
+                node.recycle();
+            }
+        }
+    }
+
+    /**
+     * Fetch the children of a node, one IPC each.
+     *
+     * @param asStack Push in reverse so they pop in order; otherwise append in order
+     */
+    private void addChildren(AccessibilityNodeInfo node, ArrayDeque<AccessibilityNodeInfo> out, boolean asStack) {
+        int childCount = node.getChildCount();
+        if (asStack) {
+            for (int i = childCount - 1; i >= 0; i--) {
+                lastScan.ipcCalls++;
+                AccessibilityNodeInfo child = node.getChild(i);
+                if (child != null) out.push(child);
+            }
+        } else {
+            for (int i = 0; i < childCount; i++) {
+                lastScan.ipcCalls++;
+                AccessibilityNodeInfo child = node.getChild(i);
+                if (child != null) out.addLast(child);
+            }
+        }
+    }
+
+    private boolean overBudget(long deadline) {
+        return lastScan.nodesVisited >= nodeBudget || SystemClock.uptimeMillis() >= deadline;
+    }
+}
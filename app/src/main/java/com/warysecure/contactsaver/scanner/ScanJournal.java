@@ -0,0 +1,246 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only on-disk journal of one scan session, so a session survives
+ * the accessibility service being killed or rebound.
+ * Records the numbers detected (with the CLAUD_ sequence taken for the ones
+ * queued for saving), skipped and saved. Records are buffered and fsynced
+ * in groups: every syncEvery records, on sync(), and when the session ends.
+ * ScannedContactWriter syncs before each provider batch, so a crash can
+ * lose records since the last sync but never the DETECTED record of a
+ * contact already on the device. A record cut off halfway ends the replay
+ * and is truncated away before appending.
+ *
+ * Record methods may be called from any thread.
+ */
+public class ScanJournal {
+    private static final String TAG = "ScanJournal";
+    public static final String FILE_NAME = "scan_session.journal";
+    public static final int DEFAULT_SYNC_EVERY = 64;
+    private static final int FILE_VERSION = 1;
+
+    private static final byte RECORD_DETECTED = 1;
+    private static final byte RECORD_SKIPPED = 2;
+    private static final byte RECORD_SAVED = 3;
+    private static final byte RECORD_END = 4;
+
+    private final File file;
+    private final int syncEvery;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int unsyncedRecords = 0;
+    // Length of the readable part of the file, found by replay
+    private long validLength = -1;
+
+    /**
+     * What an interrupted session had done, rebuilt from the journal.
+     */
+    public static class Session {
+        public final List<String> detected = new ArrayList<>();
+        public final List<String> skipped = new ArrayList<>();
+        // Queued for saving but not confirmed saved, with their sequence numbers
+        public final Map<String, Integer> pending = new LinkedHashMap<>();
+        public int savedCount;
+        public int lastSequence;
+    }
+
+    public ScanJournal(File file, int syncEvery) {
+        this.file = file;
+        this.syncEvery = Math.max(1, syncEvery);
+    }
+
+    /**
+     * Read the journal left by the last session.
+     *
+     * @return The session if it was interrupted, or null if there is none or it ended normally
+     */
+    public synchronized Session replay() {
+        validLength = 0;
+        if (!file.exists()) return null;
+
+        byte[] bytes = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read = 0;
+            while (read < bytes.length) {
+                int count = in.read(bytes, read, bytes.length - read);
+                if (count < 0) break;
+                read += count;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading journal: " + e.getMessage());
+            return null;
+        }
+
+        Session session = new Session();
+        boolean ended = false;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        try {
+            if (in.readInt() != FILE_VERSION) return null;
+            validLength = bytes.length - in.available();
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                if (type == RECORD_DETECTED) {
+                    String number = in.readUTF();
+                    int sequence = in.readInt();
+                    session.detected.add(number);
+                    if (sequence > 0) {
+                        session.pending.put(number, sequence);
+                        session.lastSequence = Math.max(session.lastSequence, sequence);
+                    }
+                } else if (type == RECORD_SKIPPED) {
+                    String number = in.readUTF();
+                    session.detected.add(number);
+                    session.skipped.add(number);
+                } else if (type == RECORD_SAVED) {
+                    session.pending.remove(in.readUTF());
+                    session.savedCount++;
+                } else if (type == RECORD_END) {
+                    ended = true;
+                } else {
+                    break;
+                }
+                validLength = bytes.length - in.available();
+            }
+        } catch (IOException e) {
+            // A record cut off by the crash; everything before it is kept
+            Log.d(TAG, "Journal ends in a partial record at " + validLength);
+        }
+
+        if (ended || session.detected.isEmpty()) return null;
+        Log.d(TAG, "Replayed " + session.detected.size() + " numbers, " + session.savedCount + " saved, "
+                + session.pending.size() + " pending");
+        return session;
+    }
+
+    /**
+     * Open the journal for a session.
+     *
+     * @param resume Append to the session found by replay(); otherwise start a new journal
+     */
+    public synchronized void startSession(boolean resume) {
+        close();
+        try {
+            if (resume && validLength > 0) {
+                fileOut = new FileOutputStream(file, true);
+                // Drop a partial record so new records are readable after it
+                fileOut.getChannel().truncate(validLength);
+                out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            } else {
+                fileOut = new FileOutputStream(file, false);
+                out = new DataOutputStream(new BufferedOutputStream(fileOut));
+                out.writeInt(FILE_VERSION);
+            }
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening journal: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * A new number was found.
+     *
+     * @param sequence The CLAUD_ sequence it was queued for saving under, or 0 if it is not saved
+     */
+    public synchronized void recordDetected(String number, int sequence) {
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_DETECTED);
+            out.writeUTF(number);
+            out.writeInt(sequence);
+            recorded();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A new number was found and will not be saved.
+     */
+    public synchronized void recordSkipped(String number) {
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_SKIPPED);
+            out.writeUTF(number);
+            recorded();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A queued number is now in the contacts provider.
+     */
+    public synchronized void recordSaved(String number) {
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_SAVED);
+            out.writeUTF(number);
+            recorded();
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write and fsync everything recorded so far.
+     */
+    public synchronized void sync() {
+        if (out == null || unsyncedRecords == 0) return;
+        try {
+            out.flush();
+            fileOut.getFD().sync();
+            unsyncedRecords = 0;
+        } catch (IOException e) {
+            Log.e(TAG, "Error syncing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Mark the session as finished, so the next start does not resume it.
+     */
+    public synchronized void endSession() {
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_END);
+            unsyncedRecords++;
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing journal: " + e.getMessage());
+        }
+        sync();
+        close();
+    }
+
+    private void recorded() {
+        if (++unsyncedRecords >= syncEvery) {
+            sync();
+        }
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing journal: " + e.getMessage());
+            }
+        }
+        out = null;
+        fileOut = null;
+    }
+}
@@ -0,0 +1,192 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Decides when the list has settled after a scroll, so the next step can start.
+ * Instead of a fixed delay, a step waits for the TYPE_VIEW_SCROLLED event,
+ * then probes (scans) until the content fingerprint has stayed the same for
+ * quietMs. A step never ends before floorMs, and ends after ceilingMs even
+ * if the list never settled; that also covers a scroll event that never
+ * comes because the list did not move.
+ *
+ * All methods must be called on the handler's thread.
+ */
+public class ScanPacer {
+    public static final long DEFAULT_FLOOR_MS = 100;
+    public static final long DEFAULT_CEILING_MS = 1500;
+    public static final long DEFAULT_QUIET_MS = 120;
+
+    private final Handler handler;
+    private final Runnable probe;
+    private final long floorMs;
+    private final long ceilingMs;
+    private final long quietMs;
+    private final Runnable probeStep = this::runProbe;
+    private final Runnable ceilingStep = () -> settle(true);
+
+    private Runnable onSettled;
+    private boolean waitingForScrollEvent;
+    private boolean hasFingerprint;
+    private long lastFingerprint;
+    private long lastChangeTime;
+    private long stepStartTime;
+
+    private final Stats stats = new Stats();
+
+    /**
+     * Timing of the steps since the last reset.
+     */
+    public static class Stats {
+        public int steps;
+        public int timedOut;
+        public int probes;
+        public long totalMs;
+        public long minMs;
+        public long maxMs;
+        public long lastMs;
+
+        public long averageMs() {
+            return steps == 0 ? 0 : totalMs / steps;
+        }
+
+        void clear() {
+            steps = 0;
+            timedOut = 0;
+            probes = 0;
+            totalMs = 0;
+            minMs = 0;
+            maxMs = 0;
+            lastMs = 0;
+        }
+
+        @Override
+        public String toString() {
+            return "steps=" + steps + " avgMs=" + averageMs() + " minMs=" + minMs + " maxMs=" + maxMs
+                    + " timedOut=" + timedOut + " probes=" + probes;
+        }
+    }
+
+    /**
+     * @param handler The handler probes and callbacks run on
+     * @param probe Scans the window; the scan must report back through onScanned
+     * @param floorMs Shortest step
+     * @param ceilingMs Longest step
+     * @param quietMs How long the fingerprint must stay unchanged
+     */
+    public ScanPacer(Handler handler, Runnable probe, long floorMs, long ceilingMs, long quietMs) {
+        this.handler = handler;
+        this.probe = probe;
+        this.floorMs = Math.max(0, floorMs);
+        this.ceilingMs = Math.max(this.floorMs, ceilingMs);
+        this.quietMs = Math.max(0, quietMs);
+    }
+
+    /**
+     * Start a step; replaces any step in progress.
+     *
+     * @param expectScrollEvent Whether to wait for a scroll event before probing
+     * @param onSettled Run once the list has settled or the ceiling is reached
+     */
+    public void awaitSettled(boolean expectScrollEvent, Runnable onSettled) {
+        cancel();
+        long now = SystemClock.uptimeMillis();
+        this.onSettled = onSettled;
+        waitingForScrollEvent = expectScrollEvent;
+        stepStartTime = now;
+        lastChangeTime = now;
+
+        handler.postAtTime(ceilingStep, now + ceilingMs);
+        if (!expectScrollEvent) {
+            scheduleProbe(now);
+        }
+    }
+
+    /**
+     * Call on each TYPE_VIEW_SCROLLED event from the scanned app.
+     */
+    public void onScrollEvent() {
+        if (onSettled == null) return;
+        long now = SystemClock.uptimeMillis();
+        lastChangeTime = now;
+        waitingForScrollEvent = false;
+        scheduleProbe(now);
+    }
+
+    /**
+     * Call after every scan, whatever started it.
+     */
+    public void onScanned(long contentFingerprint) {
+        if (onSettled == null) return;
+        if (!hasFingerprint || contentFingerprint != lastFingerprint) {
+            hasFingerprint = true;
+            lastFingerprint = contentFingerprint;
+            lastChangeTime = SystemClock.uptimeMillis();
+        }
+    }
+
+    /**
+     * Drop the step in progress without running its callback.
+     */
+    public void cancel() {
+        handler.removeCallbacks(probeStep);
+        handler.removeCallbacks(ceilingStep);
+        onSettled = null;
+        hasFingerprint = false;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    public void reset() {
+        cancel();
+        stats.clear();
+    }
+
+    private void runProbe() {
+        if (onSettled == null || waitingForScrollEvent) return;
+        stats.probes++;
+        probe.run();
+        if (onSettled == null) return;
+        if (!hasFingerprint) {
+            // A probe that reported nothing counts as an empty window
+            onScanned(0);
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (hasFingerprint && now - lastChangeTime >= quietMs && now - stepStartTime >= floorMs) {
+            settle(false);
+        } else {
+            scheduleProbe(now);
+        }
+    }
+
+    private void scheduleProbe(long now) {
+        long due = Math.max(lastChangeTime + quietMs, stepStartTime + floorMs);
+        handler.removeCallbacks(probeStep);
+        handler.postAtTime(probeStep, Math.max(due, now));
+    }
+
+    private void settle(boolean timedOut) {
+        if (onSettled == null) return;
+        if (timedOut) {
+            // Give the caller a fresh scan to judge by
+            stats.timedOut++;
+            stats.probes++;
+            probe.run();
+        }
+
+        long elapsed = SystemClock.uptimeMillis() - stepStartTime;
+        stats.steps++;
+        stats.totalMs += elapsed;
+        stats.lastMs = elapsed;
+        stats.minMs = stats.steps == 1 ? elapsed : Math.min(stats.minMs, elapsed);
+        stats.maxMs = Math.max(stats.maxMs, elapsed);
+
+        Runnable callback = onSettled;
+        cancel();
+        callback.run();
+    }
+}
@@ -0,0 +1,238 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three-stage scan pipeline, so the capture thread only reads nodes.
+ * - capture: the caller submits the texts of one scan; the service reads
+ *   them on its own scan thread, which leaves the main thread to the overlay
+ * - extract: a worker thread finds and dedupes the numbers in them
+ * - write: a second worker thread persists the items chosen for saving
+ *
+ * Both queues are bounded. A full capture queue drops the new scan, since
+ * the next scan sees the same window again; a full write queue makes the
+ * extractor wait for the writer.
+ *
+ * The writer may buffer items. It is flushed once its oldest unflushed item
+ * is flushIntervalMs old, and always before the pipeline stops.
+ *
+ * @param <T> The items handed from the extractor to the writer
+ */
+public class ScanPipeline<T> {
+    private static final String TAG = "ScanPipeline";
+    public static final int DEFAULT_CAPTURE_CAPACITY = 8;
+    public static final int DEFAULT_WRITE_CAPACITY = 256;
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    // Marks the end of a queue on stop; compared by identity
+    private static final List<CharSequence> END_OF_CAPTURES = new ArrayList<>();
+    private static final Object END_OF_WRITES = new Object();
+
+    /**
+     * Runs on the extractor thread, once per captured scan.
+     */
+    public interface Extractor {
+        void extract(List<CharSequence> texts);
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    public interface Writer<T> {
+        /**
+         * Accept one item; may buffer it until flush.
+         */
+        void write(T item);
+
+        /**
+         * Persist everything buffered so far.
+         */
+        void flush();
+    }
+
+    private final Extractor extractor;
+    private final Writer<T> writer;
+    private final long flushIntervalMs;
+    // Captured scans (List<CharSequence>) and tasks (Runnable)
+    private final BlockingQueue<Object> captureQueue;
+    private final BlockingQueue<Object> writeQueue;
+    private volatile boolean stopping = false;
+    private volatile boolean drained = false;
+    private volatile Runnable onDrained;
+    private volatile int droppedCaptures = 0;
+
+    public ScanPipeline(Extractor extractor, Writer<T> writer, long flushIntervalMs) {
+        this(extractor, writer, flushIntervalMs, DEFAULT_CAPTURE_CAPACITY, DEFAULT_WRITE_CAPACITY);
+    }
+
+    public ScanPipeline(Extractor extractor, Writer<T> writer, long flushIntervalMs,
+                        int captureCapacity, int writeCapacity) {
+        this.extractor = extractor;
+        this.writer = writer;
+        this.flushIntervalMs = flushIntervalMs;
+        this.captureQueue = new ArrayBlockingQueue<>(captureCapacity);
+        this.writeQueue = new ArrayBlockingQueue<>(writeCapacity);
+    }
+
+    public void start() {
+        new Thread(this::runExtractor, "scan-extract").start();
+        new Thread(this::runWriter, "scan-write").start();
+    }
+
+    /**
+     * Hand over the texts of one scan. Never blocks.
+     *
+     * @param texts Text snapshots, detached from the accessibility nodes
+     * @return false if the scan was dropped because the extractor is behind
+     */
+    public boolean submitCapture(List<CharSequence> texts) {
+        if (stopping) return false;
+        if (!captureQueue.offer(texts)) {
+            droppedCaptures++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Run a task on the extractor thread, in order with the captured scans. Never blocks.
+     *
+     * @return false if the capture queue is full
+     */
+    public boolean submitTask(Runnable task) {
+        if (stopping) return false;
+        return captureQueue.offer(task);
+    }
+
+    /**
+     * Queue an item for the writer. Called from the extractor; blocks while the queue is full.
+     */
+    public void submitWrite(T item) {
+        enqueueWrite(item);
+    }
+
+    private void enqueueWrite(Object item) {
+        try {
+            writeQueue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finish what is queued, then stop both threads.
+     *
+     * @param onDrained Run on the writer thread once everything is written, may be null
+     */
+    public void stop(Runnable onDrained) {
+        this.onDrained = onDrained;
+        stopping = true;
+        // Unlike submitCapture this waits, so the end marker is never lost
+        new Thread(() -> {
+            try {
+                captureQueue.put(END_OF_CAPTURES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "scan-stop").start();
+    }
+
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    /**
+     * Whether both threads are done with everything queued before stop().
+     */
+    public boolean isDrained() {
+        return drained;
+    }
+
+    public int getDroppedCaptures() {
+        return droppedCaptures;
+    }
+
+    public int getPendingWrites() {
+        return writeQueue.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runExtractor() {
+        try {
+            while (true) {
+                Object item = captureQueue.take();
+                if (item == END_OF_CAPTURES) break;
+                try {
+                    if (item instanceof Runnable) {
+                        ((Runnable) item).run();
+                    } else {
+                        extractor.extract((List<CharSequence>) item);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error extracting numbers: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        enqueueWrite(END_OF_WRITES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runWriter() {
+        boolean unflushed = false;
+        long flushDue = 0;
+        try {
+            while (true) {
+                Object item;
+                if (unflushed) {
+                    long wait = flushDue - SystemClock.uptimeMillis();
+                    item = wait > 0 ? writeQueue.poll(wait, TimeUnit.MILLISECONDS) : null;
+                    if (item == null) {
+                        flushWriter();
+                        unflushed = false;
+                        continue;
+                    }
+                } else {
+                    item = writeQueue.take();
+                }
+
+                if (item == END_OF_WRITES) break;
+                try {
+                    writer.write((T) item);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error writing item: " + e.getMessage());
+                }
+                if (!unflushed) {
+                    unflushed = true;
+                    flushDue = SystemClock.uptimeMillis() + flushIntervalMs;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushWriter();
+        // The extractor queued END_OF_WRITES as its last act, so both threads are done
+        drained = true;
+
+        Runnable callback = onDrained;
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    private void flushWriter() {
+        try {
+            writer.flush();
+        } catch (Exception e) {
+            Log.e(TAG, "Error flushing writer: " + e.getMessage());
+        }
+    }
+}
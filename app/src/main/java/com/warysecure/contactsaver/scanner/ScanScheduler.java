@@ -0,0 +1,115 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Coalesces scan requests from accessibility event bursts.
+ * A request after a quiet window scans at once (leading edge). Requests
+ * inside the window are merged into one trailing scan that runs once the
+ * events have stopped for a full window. A stream of events that never
+ * settles still gets a scan every MAX_WAIT_WINDOWS windows.
+ *
+ * All methods must be called on the handler's thread.
+ */
+public class ScanScheduler {
+    public static final long DEFAULT_WINDOW_MS = 250;
+    private static final int MAX_WAIT_WINDOWS = 4;
+
+    private final Handler handler;
+    private final Runnable scan;
+    private final long windowMs;
+    private final Runnable trailingScan = this::runTrailingScan;
+
+    private boolean trailingPending = false;
+    private long firstPendingTime = 0;
+    private long lastScanTime = 0;
+    private int requestCount = 0;
+    private int scanCount = 0;
+
+    /**
+     * @param handler The handler scans run on
+     * @param scan The scan to run
+     * @param windowMs Minimum time between two scans, and the quiet time before a trailing scan
+     */
+    public ScanScheduler(Handler handler, Runnable scan, long windowMs) {
+        this.handler = handler;
+        this.scan = scan;
+        this.windowMs = Math.max(0, windowMs);
+    }
+
+    /**
+     * Ask for a scan, e.g. on a content-changed or scrolled event.
+     */
+    public void requestScan() {
+        requestCount++;
+        long now = SystemClock.uptimeMillis();
+
+        if (!trailingPending) {
+            if (now - lastScanTime >= windowMs) {
+                runScan(now);
+                return;
+            }
+            trailingPending = true;
+            firstPendingTime = now;
+        }
+
+        // Push the trailing scan back while events keep coming, up to the max wait
+        long due = Math.min(now + windowMs, firstPendingTime + windowMs * MAX_WAIT_WINDOWS);
+        handler.removeCallbacks(trailingScan);
+        handler.postAtTime(trailingScan, due);
+    }
+
+    /**
+     * Scan right away, absorbing any pending trailing scan.
+     */
+    public void scanNow() {
+        requestCount++;
+        cancel();
+        runScan(SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Drop any pending trailing scan.
+     */
+    public void cancel() {
+        handler.removeCallbacks(trailingScan);
+        trailingPending = false;
+    }
+
+    /**
+     * Start counting from zero for a new scan session.
+     */
+    public void reset() {
+        cancel();
+        lastScanTime = 0;
+        requestCount = 0;
+        scanCount = 0;
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    public int getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     * Number of requests that were merged into another scan.
+     */
+    public int getScansSaved() {
+        return requestCount - scanCount - (trailingPending ? 1 : 0);
+    }
+
+    private void runTrailingScan() {
+        trailingPending = false;
+        runScan(SystemClock.uptimeMillis());
+    }
+
+    private void runScan(long now) {
+        lastScanTime = now;
+        scanCount++;
+        scan.run();
+    }
+}
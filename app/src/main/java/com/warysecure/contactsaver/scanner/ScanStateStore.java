@@ -0,0 +1,206 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Scan results published for the UI as immutable, versioned snapshots.
+ * The scanner threads write; any thread may read getSnapshot() without
+ * locking. Numbers are only appended during a session, so a snapshot is
+ * a length over shared append-only arrays: publishing copies nothing, and
+ * a listener can render just the entries past the count it already shows.
+ *
+ * Listeners run on the main thread. Changes made while a notification is
+ * pending are folded into it, so a burst of numbers costs one callback.
+ */
+public class ScanStateStore {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static ScanStateStore instance;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable notifyListeners = this::notifyListeners;
+
+    // Guarded by this
+    private String[] numbers = new String[INITIAL_CAPACITY];
+    private boolean[] unsaved = new boolean[INITIAL_CAPACITY];
+    private int size = 0;
+    private int unsavedCount = 0;
+    private int savedCount = 0;
+    private int session = 0;
+    private long version = 0;
+    private boolean notifyPending = false;
+
+    private volatile Snapshot snapshot = new Snapshot(0, 0, numbers, unsaved, 0, 0, 0);
+
+    /**
+     * The scan results at one version. Never changes once published.
+     */
+    public static class Snapshot {
+        // Bumped by reset(); indexes from another session do not apply
+        public final int session;
+        public final long version;
+        private final String[] numbers;
+        private final boolean[] unsaved;
+        private final int size;
+        private final int unsavedCount;
+        private final int savedCount;
+
+        Snapshot(int session, long version, String[] numbers, boolean[] unsaved,
+                 int size, int unsavedCount, int savedCount) {
+            this.session = session;
+            this.version = version;
+            this.numbers = numbers;
+            this.unsaved = unsaved;
+            this.size = size;
+            this.unsavedCount = unsavedCount;
+            this.savedCount = savedCount;
+        }
+
+        public int getDetectedCount() {
+            return size;
+        }
+
+        /**
+         * Contacts confirmed written to the provider.
+         */
+        public int getSavedCount() {
+            return savedCount;
+        }
+
+        public int getUnsavedCount() {
+            return unsavedCount;
+        }
+
+        /**
+         * The number detected at an index, in detection order.
+         */
+        public String getNumber(int index) {
+            if (index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            return numbers[index];
+        }
+
+        /**
+         * Whether the number at an index was left unsaved (already a contact, or over the limit).
+         */
+        public boolean isUnsaved(int index) {
+            if (index >= size) throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            return unsaved[index];
+        }
+    }
+
+    /**
+     * Told on the main thread that the state has a new version.
+     */
+    public interface Listener {
+        void onScanStateChanged(Snapshot snapshot);
+    }
+
+    public static synchronized ScanStateStore getInstance() {
+        if (instance == null) {
+            instance = new ScanStateStore();
+        }
+        return instance;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Record a newly detected number.
+     *
+     * @param isUnsaved Whether it will not be saved
+     */
+    public synchronized void addNumber(String number, boolean isUnsaved) {
+        if (size == numbers.length) {
+            // Earlier snapshots keep the old arrays, whose first size entries stay valid
+            numbers = Arrays.copyOf(numbers, size * 2);
+            unsaved = Arrays.copyOf(unsaved, size * 2);
+        }
+        numbers[size] = number;
+        unsaved[size] = isUnsaved;
+        size++;
+        if (isUnsaved) {
+            unsavedCount++;
+        }
+        publish();
+    }
+
+    /**
+     * Record contacts written to the provider.
+     */
+    public synchronized void addSaved(int count) {
+        if (count == 0) return;
+        savedCount += count;
+        publish();
+    }
+
+    /**
+     * Start a new session, optionally seeded with the results of an earlier one.
+     *
+     * @param detected Numbers in detection order, may be empty
+     * @param unsavedNumbers Which of them are unsaved
+     * @param saved Contacts already saved
+     */
+    public synchronized void reset(List<String> detected, List<String> unsavedNumbers, int saved) {
+        int capacity = Math.max(INITIAL_CAPACITY, detected.size());
+        numbers = new String[capacity];
+        unsaved = new boolean[capacity];
+        size = 0;
+        unsavedCount = 0;
+        savedCount = saved;
+        session++;
+
+        Set<String> unsavedSet = new HashSet<>(unsavedNumbers);
+        for (String number : detected) {
+            boolean isUnsaved = unsavedSet.contains(number);
+            numbers[size] = number;
+            unsaved[size] = isUnsaved;
+            size++;
+            if (isUnsaved) {
+                unsavedCount++;
+            }
+        }
+        publish();
+    }
+
+    public void reset() {
+        reset(new ArrayList<>(), new ArrayList<>(), 0);
+    }
+
+    private void publish() {
+        version++;
+        snapshot = new Snapshot(session, version, numbers, unsaved, size, unsavedCount, savedCount);
+        if (!notifyPending && !listeners.isEmpty()) {
+            notifyPending = true;
+            mainHandler.post(notifyListeners);
+        }
+    }
+
+    private void notifyListeners() {
+        synchronized (this) {
+            notifyPending = false;
+        }
+        Snapshot current = snapshot;
+        for (Listener listener : listeners) {
+            listener.onScanStateChanged(current);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write-behind writer for scanned numbers.
+ * Buffers contacts and inserts them as one multi-contact provider batch,
+ * either when batchSize contacts are waiting or when the pipeline flushes
+ * on its timer or on stop. Display names are fixed when a contact is
+ * queued, so the CLAUD_ sequence follows detection order whatever the
+ * batching.
+ *
+ * The scan journal is synced before each batch goes to the provider
+ * (write-ahead), so no contact reaches the device without its DETECTED
+ * record and CLAUD_ sequence being durable.
+ */
+public class ScannedContactWriter implements ScanPipeline.Writer<ScannedContactWriter.Contact> {
+    private static final String TAG = "ScannedContactWriter";
+    // Three operations per contact. Each contact starts at a yield point, which keeps
+    // well under the provider's 500 operations between yield points; the cap bounds
+    // the size of one binder transaction
+    public static final int MAX_BATCH_SIZE = 133;
+    public static final int DEFAULT_BATCH_SIZE = 25;
+
+    private final ContentResolver resolver;
+    private final int batchSize;
+    private final ScanJournal journal;
+    private final Callback callback;
+    private final List<Contact> batch = new ArrayList<>();
+
+    /**
+     * A scanned number waiting to be saved, with its name already assigned.
+     */
+    public static class Contact {
+        public final String phoneNumber;
+        public final String displayName;
+
+        public Contact(String phoneNumber, String displayName) {
+            this.phoneNumber = phoneNumber;
+            this.displayName = displayName;
+        }
+    }
+
+    /**
+     * Told about contacts once they are in the provider. Runs on the writer thread.
+     */
+    public interface Callback {
+        void onContactsSaved(List<Contact> saved);
+    }
+
+    /**
+     * @param journal Synced before each batch is written, may be null
+     */
+    public ScannedContactWriter(ContentResolver resolver, int batchSize, ScanJournal journal, Callback callback) {
+        this.resolver = resolver;
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.journal = journal;
+        this.callback = callback;
+    }
+
+    @Override
+    public void write(Contact contact) {
+        batch.add(contact);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (batch.isEmpty()) return;
+
+        List<Contact> contacts = new ArrayList<>(batch);
+        batch.clear();
+
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>(contacts.size() * 3);
+        for (Contact contact : contacts) {
+            addInsertOps(ops, contact);
+        }
+
+        if (journal != null) {
+            // Write-ahead: the sequences of these contacts must survive a crash mid-batch
+            journal.sync();
+        }
+
+        try {
+            resolver.applyBatch(ContactsContract.AUTHORITY, ops);
+            callback.onContactsSaved(contacts);
+            Log.d(TAG, "Saved batch of " + contacts.size() + " contacts");
+        } catch (Exception e) {
+            // Retry one by one so a single bad contact does not lose the batch.
+            // Yield points may have committed part of it, so check before re-inserting
+            Log.e(TAG, "Error saving batch, retrying individually: " + e.getMessage());
+            List<Contact> saved = new ArrayList<>();
+            for (Contact contact : contacts) {
+                if (isInserted(contact) || saveSingle(contact)) {
+                    saved.add(contact);
+                }
+            }
+            if (!saved.isEmpty()) {
+                callback.onContactsSaved(saved);
+            }
+        }
+    }
+
+    private boolean saveSingle(Contact contact) {
+        try {
+            ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+            addInsertOps(ops, contact);
+            resolver.applyBatch(ContactsContract.AUTHORITY, ops);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Error saving contact: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Whether a contact with this name and number is already in the provider.
+     */
+    private boolean isInserted(Contact contact) {
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                    new String[]{ContactsContract.CommonDataKinds.Phone._ID},
+                    ContactsContract.CommonDataKinds.Phone.NUMBER + " = ? AND "
+                            + ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME + " = ?",
+                    new String[]{contact.phoneNumber, contact.displayName},
+                    null
+            );
+            return cursor != null && cursor.moveToFirst();
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking contact: " + e.getMessage());
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Add the operations creating one contact, with a yield point before it
+     * so other provider clients are not blocked for the whole batch.
+     */
+    private static void addInsertOps(ArrayList<ContentProviderOperation> ops, Contact contact) {
+        int rawContactInsertIndex = ops.size();
+
+        // Create new raw contact
+        ops.add(ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
+                .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, null)
+                .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, null)
+                .withYieldAllowed(rawContactInsertIndex > 0)
+                .build());
+
+        // Add display name with CLAUD_ prefix
+        ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactInsertIndex)
+                .withValue(ContactsContract.Data.MIMETYPE,
+                        ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+                .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, contact.displayName)
+                .build());
+
+        // Add phone number
+        ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactInsertIndex)
+                .withValue(ContactsContract.Data.MIMETYPE,
+                        ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
+                .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, contact.phoneNumber)
+                .withValue(ContactsContract.CommonDataKinds.Phone.TYPE,
+                        ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE)
+                .build());
+    }
+}
@@ -0,0 +1,149 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.accessibilityservice.AccessibilityService;
+import android.accessibilityservice.GestureDescription;
+import android.graphics.Path;
+import android.os.Handler;
+import android.util.Log;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+/**
+ * Scrolls the chat list one page and tells when its end is reached.
+ * Prefers ACTION_SCROLL_FORWARD on the list container: the action returns
+ * false once the list cannot scroll further, and a scan after the scroll
+ * that shows the same movement fingerprint (the texts of the first and
+ * last visible rows) as before it means the list did not move. Falls back
+ * to a swipe gesture only when the window has no scrollable node; then
+ * only the fingerprint can tell the end.
+ */
+public class ScrollDriver {
+    private static final String TAG = "ScrollDriver";
+    public static final long DEFAULT_GESTURE_DURATION_MS = 300;
+
+    private final AccessibilityService service;
+    private final NodeTraversal nodeTraversal;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final long gestureDurationMs;
+    private final Handler callbackHandler;
+
+    private long fingerprintAtScroll = 0;
+    private int actionScrolls = 0;
+    private int gestureScrolls = 0;
+
+    /**
+     * Called on the callback handler's thread after a scroll attempt.
+     */
+    public interface Callback {
+        /**
+         * The list was asked to scroll; scan it to see the new rows.
+         */
+        void onScrolled(boolean usedGesture);
+
+        /**
+         * The list is at its end.
+         */
+        void onEndOfList();
+    }
+
+    /**
+     * @param gestureDurationMs Length of the fallback swipe stroke
+     * @param callbackHandler Handler of the thread that calls scrollForward; the callback runs there
+     */
+    public ScrollDriver(AccessibilityService service, NodeTraversal nodeTraversal, int screenWidth, int screenHeight,
+                        long gestureDurationMs, Handler callbackHandler) {
+        this.service = service;
+        this.nodeTraversal = nodeTraversal;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.gestureDurationMs = Math.max(1, gestureDurationMs);
+        this.callbackHandler = callbackHandler;
+    }
+
+    /**
+     * Scroll the list in a window forward by one page.
+     *
+     * @param root The window root, stays owned by the caller; null to swipe blindly
+     * @param movementFingerprint Movement fingerprint of the last scan before this scroll
+     * @param callback Told about the outcome
+     */
+    public void scrollForward(AccessibilityNodeInfo root, long movementFingerprint, Callback callback) {
+        fingerprintAtScroll = movementFingerprint;
+
+        AccessibilityNodeInfo container = root != null ? nodeTraversal.findListContainer(root) : null;
+        if (container != null && container.isScrollable()) {
+            boolean scrolled = container.performAction(AccessibilityNodeInfo.ACTION_SCROLL_FORWARD);
+            if (container != root) {
+                container.recycle();
+            }
+            actionScrolls++;
+            if (scrolled) {
+                callback.onScrolled(false);
+            } else {
+                callback.onEndOfList();
+            }
+            return;
+        }
+        if (container != null && container != root) {
+            container.recycle();
+        }
+
+        gestureScrolls++;
+        dispatchSwipe(callback);
+    }
+
+    /**
+     * Compare a scan made after the last scroll with the one before it.
+     *
+     * @param movementFingerprint Movement fingerprint of a scan after the scroll,
+     *                            see NodeTraversal.Stats
+     * @return false if the visible rows are unchanged, meaning the list did not move
+     */
+    public boolean hasMoved(long movementFingerprint) {
+        // 0 means no fingerprint was taken, so nothing can be concluded
+        return movementFingerprint == 0 || movementFingerprint != fingerprintAtScroll;
+    }
+
+    public int getActionScrolls() {
+        return actionScrolls;
+    }
+
+    public int getGestureScrolls() {
+        return gestureScrolls;
+    }
+
+    public void reset() {
+        fingerprintAtScroll = 0;
+        actionScrolls = 0;
+        gestureScrolls = 0;
+    }
+
+    private void dispatchSwipe(Callback callback) {
+        Path swipePath = new Path();
+        float startY = screenHeight * 0.7f;
+        float endY = screenHeight * 0.3f;
+        float x = screenWidth / 2f;
+
+        swipePath.moveTo(x, startY);
+        swipePath.lineTo(x, endY);
+
+        GestureDescription.Builder gestureBuilder = new GestureDescription.Builder();
+        gestureBuilder.addStroke(new GestureDescription.StrokeDescription(swipePath, 0, gestureDurationMs));
+
+        service.dispatchGesture(gestureBuilder.build(), new AccessibilityService.GestureResultCallback() {
+            @Override
+            public void onCompleted(GestureDescription gestureDescription) {
+                super.onCompleted(gestureDescription);
+                callback.onScrolled(true);
+            }
+
+            @Override
+            public void onCancelled(GestureDescription gestureDescription) {
+                super.onCancelled(gestureDescription);
+                // Carry on; the next scan's fingerprint shows whether anything moved
+                Log.d(TAG, "Scroll gesture cancelled");
+                callback.onScrolled(true);
+            }
+        }, callbackHandler);
+    }
+}
@@ -0,0 +1,147 @@
+package com.warysecure.contactsaver.scanner;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Throttled channel for scan status from the scanner threads to the overlay.
+ * Holds only the latest counters: publishing overwrites them and never
+ * queues. They are handed to the sink on the main thread at most once per
+ * frame and once per intervalMs, however often they are published, so an
+ * event burst costs one view update.
+ */
+public class StatusChannel {
+    public static final long DEFAULT_INTERVAL_MS = 100;
+    private static final long RATE_WINDOW_MS = 1000;
+
+    private final Handler mainHandler;
+    private final long intervalMs;
+    private final Sink sink;
+    private final Runnable scheduleFrame = this::scheduleFrame;
+    private final Choreographer.FrameCallback drainFrame = frameTimeNanos -> drain();
+    // The main thread's, so a drain can be cancelled from any thread; guarded by this
+    private Choreographer choreographer;
+
+    // Guarded by this
+    private int found;
+    private int saved;
+    private int skipped;
+    private int scans;
+    private boolean drainScheduled = false;
+    private long lastDrainTime = 0;
+    private int rateScans = 0;
+    private long rateStartTime = 0;
+    private float scansPerSecond = 0;
+
+    /**
+     * Scan counters at one point in time.
+     */
+    public static class Status {
+        public final int found;
+        public final int saved;
+        public final int skipped;
+        public final float scansPerSecond;
+
+        public Status(int found, int saved, int skipped, float scansPerSecond) {
+            this.found = found;
+            this.saved = saved;
+            this.skipped = skipped;
+            this.scansPerSecond = scansPerSecond;
+        }
+    }
+
+    /**
+     * Receives the latest status on the main thread.
+     */
+    public interface Sink {
+        void onStatus(Status status);
+    }
+
+    /**
+     * @param mainHandler Handler of the main thread
+     * @param intervalMs Minimum time between two drains; one frame is the floor
+     * @param sink Receives the drained status
+     */
+    public StatusChannel(Handler mainHandler, long intervalMs, Sink sink) {
+        this.mainHandler = mainHandler;
+        this.intervalMs = Math.max(0, intervalMs);
+        this.sink = sink;
+    }
+
+    /**
+     * Replace the counters. Any thread.
+     */
+    public synchronized void publish(int found, int saved, int skipped) {
+        this.found = found;
+        this.saved = saved;
+        this.skipped = skipped;
+        requestDrain();
+    }
+
+    /**
+     * Count one scan, for the scan rate. Any thread.
+     */
+    public synchronized void onScan() {
+        scans++;
+    }
+
+    /**
+     * Start counting from zero for a new scan session.
+     */
+    public synchronized void reset() {
+        found = 0;
+        saved = 0;
+        skipped = 0;
+        scans = 0;
+        rateScans = 0;
+        rateStartTime = 0;
+        scansPerSecond = 0;
+        cancel();
+        requestDrain();
+    }
+
+    /**
+     * Drop a drain that is waiting to run, e.g. when the scan stops.
+     * The next publish schedules a new one. Any thread.
+     */
+    public synchronized void cancel() {
+        mainHandler.removeCallbacks(scheduleFrame);
+        if (choreographer != null) {
+            choreographer.removeFrameCallback(drainFrame);
+        }
+        drainScheduled = false;
+    }
+
+    private void requestDrain() {
+        if (drainScheduled) return;
+        drainScheduled = true;
+        mainHandler.postAtTime(scheduleFrame, lastDrainTime + intervalMs);
+    }
+
+    private synchronized void scheduleFrame() {
+        if (choreographer == null) {
+            choreographer = Choreographer.getInstance();
+        }
+        choreographer.postFrameCallback(drainFrame);
+    }
+
+    private void drain() {
+        Status status;
+        synchronized (this) {
+            drainScheduled = false;
+            long now = SystemClock.uptimeMillis();
+            lastDrainTime = now;
+            if (rateStartTime == 0) {
+                rateStartTime = now;
+                rateScans = scans;
+            } else if (now - rateStartTime >= RATE_WINDOW_MS) {
+                scansPerSecond = (scans - rateScans) * 1000f / (now - rateStartTime);
+                rateStartTime = now;
+                rateScans = scans;
+            }
+            status = new Status(found, saved, skipped, scansPerSecond);
+        }
+        sink.onStatus(status);
+    }
+}
@@ -0,0 +1,436 @@
+package com.warysecure.contactsaver.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persisted snapshot of the phone numbers on the device.
+ * Shared by the WhatsApp scanner and the server sync so neither has to walk
+ * the whole Phone table on start. Each refresh only reads contacts changed
+ * since the last watermark and contacts deleted since then (DeletedContacts).
+ * The watermark is the latest CONTACT_LAST_UPDATED_TIMESTAMP or deletion
+ * time the provider has reported, never the device clock, so a contact
+ * the provider stamps while a refresh runs is not skipped.
+ *
+ * The scanner only needs the numbers, as PhoneNumberSet keys, so it drops
+ * the in-memory copy with trimMemory() once it has them; the next lookup
+ * loads the persisted copy again.
+ */
+public class DeviceContactSnapshot {
+    private static final String TAG = "DeviceContactSnapshot";
+    private static final String FILE_NAME = "device_contacts.snapshot";
+    private static final int FILE_VERSION = 3;
+    private static final String[] PHONE_PROJECTION = {
+            ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+            ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY,
+            ContactsContract.CommonDataKinds.Phone.NUMBER,
+            ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID,
+            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
+            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME_SOURCE,
+            ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP
+    };
+
+    private static DeviceContactSnapshot instance;
+
+    private final Context context;
+    private Map<String, ContactNumbers> contacts = new HashMap<>();
+    private PhoneIndex phoneIndex = new PhoneIndex();
+    private long watermark = 0;
+    // Device time the last successful refresh started, for the age of the deletion records
+    private long refreshedAt = 0;
+    private boolean loaded = false;
+    // Numbers recorded with put() since the last save
+    private boolean dirty = false;
+
+    /**
+     * Numbers of one device contact, already normalized.
+     */
+    private static class ContactNumbers {
+        // Replaced on rename
+        PhoneIndex.Entry entry;
+        final List<String> numbers = new ArrayList<>();
+
+        ContactNumbers(PhoneIndex.Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private DeviceContactSnapshot(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized DeviceContactSnapshot getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceContactSnapshot(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Bring the snapshot up to date with the contacts provider.
+     * Loads the persisted copy on first use, then applies only the changes
+     * since the last watermark. Falls back to a full reload when there is no
+     * watermark or the last refresh is older than the provider keeps
+     * deletion records.
+     */
+    public synchronized void refresh() {
+        long start = System.currentTimeMillis();
+        ensureLoaded();
+
+        boolean changed;
+        try {
+            if (watermark == 0 || start - refreshedAt > ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS) {
+                changed = fullReload();
+            } else {
+                changed = applyDelta();
+            }
+            refreshedAt = start;
+        } catch (Exception e) {
+            Log.e(TAG, "Error refreshing snapshot: " + e.getMessage());
+            return;
+        }
+
+        if (changed || dirty) {
+            rebuildIndex();
+            saveToDisk();
+        }
+        Log.d(TAG, "Snapshot refreshed in " + (System.currentTimeMillis() - start) + " ms, "
+                + phoneIndex.size() + " numbers");
+    }
+
+    /**
+     * Find the contact owning a phone number.
+     *
+     * @param phone The phone number to search for
+     * @return The owning contact if found, null otherwise
+     */
+    public synchronized PhoneIndex.Entry find(String phone) {
+        ensureLoaded();
+        return phoneIndex.find(phone);
+    }
+
+    /**
+     * Record a number this app just wrote to the device.
+     * The next refresh picks up the contact from the provider as well.
+     *
+     * @param phone The phone number that was saved
+     * @param entry The contact owning it
+     */
+    public synchronized void put(String phone, PhoneIndex.Entry entry) {
+        if (phone == null || entry == null || entry.contactId == null) return;
+
+        ensureLoaded();
+        phoneIndex.put(phone, entry);
+        // Also kept with the contact, so it survives trimMemory()
+        ContactNumbers contact = contacts.get(entry.contactId);
+        if (contact == null) {
+            contact = new ContactNumbers(entry);
+            contacts.put(entry.contactId, contact);
+        }
+        contact.numbers.add(PhoneNormalizer.normalize(phone));
+        dirty = true;
+    }
+
+    /**
+     * Record the new name of a contact this app just renamed on the device.
+     * Lookups from then on return an entry with the new name.
+     *
+     * @param contactId The renamed contact
+     * @param newName The name it has now
+     */
+    public synchronized void rename(String contactId, String newName) {
+        ensureLoaded();
+        ContactNumbers contact = contacts.get(contactId);
+        if (contact == null) return;
+
+        PhoneIndex.Entry old = contact.entry;
+        contact.entry = new PhoneIndex.Entry(old.contactId, old.lookupKey, old.rawContactId, newName, true);
+        for (String number : contact.numbers) {
+            phoneIndex.replace(number, old, contact.entry);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Add every device number to a set as its canonical key, without
+     * building a String per number where the key packs.
+     *
+     * @param normalizer Canonicalizes the numbers, as the scanner does with the ones it detects
+     * @param out The set to add to
+     */
+    public synchronized void collectNumbers(PhoneNormalizer normalizer, PhoneNumberSet out) {
+        ensureLoaded();
+        for (ContactNumbers contact : contacts.values()) {
+            for (String number : contact.numbers) {
+                long key = normalizer.canonicalize(PhoneNormalizer.toKey(number));
+                if (key != PhoneNumberSet.NO_KEY) {
+                    out.addKey(key);
+                } else {
+                    out.add(normalizer.canonicalize(number));
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the in-memory copy, keeping only the persisted one.
+     * For the long-lived scanner process, which needs the numbers only once
+     * per scan; the next refresh() or lookup loads the file again.
+     */
+    public synchronized void trimMemory() {
+        if (!loaded) return;
+        if (dirty) {
+            saveToDisk();
+        }
+        // New objects rather than clear(), which keeps the old table capacity
+        contacts = new HashMap<>();
+        phoneIndex = new PhoneIndex();
+        loaded = false;
+        dirty = false;
+    }
+
+    private void ensureLoaded() {
+        if (!loaded) {
+            loadFromDisk();
+            loaded = true;
+        }
+    }
+
+    private boolean fullReload() {
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor = resolver.query(
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                PHONE_PROJECTION,
+                null,
+                null,
+                null
+        );
+        if (cursor == null) {
+            return false;
+        }
+
+        contacts.clear();
+        long latest = 0;
+        try {
+            while (cursor.moveToNext()) {
+                addNumber(cursor);
+                latest = Math.max(latest, cursor.getLong(6));
+            }
+            // Contacts with no number are not in the cursor; a later number updates their timestamp
+            watermark = latest;
+        } finally {
+            cursor.close();
+        }
+        Log.d(TAG, "Full reload of " + contacts.size() + " contacts");
+        return true;
+    }
+
+    private boolean applyDelta() {
+        ContentResolver resolver = context.getContentResolver();
+        String since = String.valueOf(watermark);
+        long latest = watermark;
+        boolean changed = false;
+
+        // Drop contacts deleted since the watermark
+        Cursor deleted = resolver.query(
+                ContactsContract.DeletedContacts.CONTENT_URI,
+                new String[]{
+                        ContactsContract.DeletedContacts.CONTACT_ID,
+                        ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP
+                },
+                ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+                new String[]{since},
+                null
+        );
+        if (deleted != null) {
+            try {
+                while (deleted.moveToNext()) {
+                    changed |= contacts.remove(deleted.getString(0)) != null;
+                    latest = Math.max(latest, deleted.getLong(1));
+                }
+            } finally {
+                deleted.close();
+            }
+        }
+
+        // Forget the numbers of updated contacts, including ones that lost all their numbers
+        Set<String> updatedIds = new HashSet<>();
+        Cursor updated = resolver.query(
+                ContactsContract.Contacts.CONTENT_URI,
+                new String[]{
+                        ContactsContract.Contacts._ID,
+                        ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP
+                },
+                ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
+                new String[]{since},
+                null
+        );
+        if (updated != null) {
+            try {
+                while (updated.moveToNext()) {
+                    updatedIds.add(updated.getString(0));
+                    latest = Math.max(latest, updated.getLong(1));
+                }
+            } finally {
+                updated.close();
+            }
+        }
+        if (updatedIds.isEmpty()) {
+            watermark = latest;
+            return changed;
+        }
+        for (String contactId : updatedIds) {
+            contacts.remove(contactId);
+        }
+
+        // Re-read the numbers of updated contacts only
+        Cursor phones = resolver.query(
+                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                PHONE_PROJECTION,
+                ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?",
+                new String[]{since},
+                null
+        );
+        if (phones != null) {
+            try {
+                while (phones.moveToNext()) {
+                    // Contacts updated after the query above are left for the next refresh
+                    if (updatedIds.contains(phones.getString(0))) {
+                        addNumber(phones);
+                    }
+                }
+            } finally {
+                phones.close();
+            }
+        }
+
+        watermark = latest;
+        Log.d(TAG, "Applied delta of " + updatedIds.size() + " updated contacts");
+        return true;
+    }
+
+    /**
+     * Add the number of a Phone row read with PHONE_PROJECTION.
+     */
+    private void addNumber(Cursor cursor) {
+        String contactId = cursor.getString(0);
+        String number = cursor.getString(2);
+        if (contactId == null || number == null) return;
+
+        ContactNumbers contact = contacts.get(contactId);
+        if (contact == null) {
+            boolean hasStructuredName = !cursor.isNull(5)
+                    && cursor.getInt(5) == ContactsContract.DisplayNameSources.STRUCTURED_NAME;
+            contact = new ContactNumbers(new PhoneIndex.Entry(
+                    contactId, cursor.getString(1), cursor.getString(3), cursor.getString(4), hasStructuredName));
+            contacts.put(contactId, contact);
+        }
+        contact.numbers.add(PhoneNormalizer.normalize(number));
+    }
+
+    private void rebuildIndex() {
+        PhoneIndex index = new PhoneIndex();
+        for (ContactNumbers contact : contacts.values()) {
+            for (String number : contact.numbers) {
+                index.put(number, contact.entry);
+            }
+        }
+        phoneIndex = index;
+    }
+
+    private void loadFromDisk() {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) return;
+
+            long savedWatermark = in.readLong();
+            long savedRefreshedAt = in.readLong();
+            int contactCount = in.readInt();
+            for (int i = 0; i < contactCount; i++) {
+                String contactId = in.readUTF();
+                String lookupKey = readNullableUTF(in);
+                String rawContactId = readNullableUTF(in);
+                String displayName = readNullableUTF(in);
+                boolean hasStructuredName = in.readBoolean();
+                ContactNumbers contact = new ContactNumbers(new PhoneIndex.Entry(
+                        contactId, lookupKey, rawContactId, displayName, hasStructuredName));
+                int numberCount = in.readInt();
+                for (int j = 0; j < numberCount; j++) {
+                    contact.numbers.add(in.readUTF());
+                }
+                contacts.put(contactId, contact);
+            }
+            watermark = savedWatermark;
+            refreshedAt = savedRefreshedAt;
+            rebuildIndex();
+        } catch (IOException e) {
+            Log.e(TAG, "Discarding unreadable snapshot: " + e.getMessage());
+            contacts.clear();
+            watermark = 0;
+            refreshedAt = 0;
+        }
+    }
+
+    private void saveToDisk() {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temp = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeLong(watermark);
+            out.writeLong(refreshedAt);
+            out.writeInt(contacts.size());
+            for (ContactNumbers contact : contacts.values()) {
+                out.writeUTF(contact.entry.contactId);
+                writeNullableUTF(out, contact.entry.lookupKey);
+                writeNullableUTF(out, contact.entry.rawContactId);
+                writeNullableUTF(out, contact.entry.displayName);
+                out.writeBoolean(contact.entry.hasStructuredName);
+                out.writeInt(contact.numbers.size());
+                for (String number : contact.numbers) {
+                    out.writeUTF(number);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving snapshot: " + e.getMessage());
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Error replacing snapshot file");
+            return;
+        }
+        dirty = false;
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
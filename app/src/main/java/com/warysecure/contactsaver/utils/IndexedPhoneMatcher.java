@@ -0,0 +1,36 @@
+package com.warysecure.contactsaver.utils;
+
+import android.content.Context;
+
+/**
+ * Matches numbers against the in-memory index of the device contact snapshot.
+ * The snapshot is brought up to date once per sync with a delta query,
+ * then every lookup is a map hit.
+ */
+public class IndexedPhoneMatcher implements PhoneMatcher {
+    private DeviceContactSnapshot snapshot;
+    private boolean refreshed = false;
+
+    public IndexedPhoneMatcher(Context context) {
+        this.snapshot = DeviceContactSnapshot.getInstance(context);
+    }
+
+    @Override
+    public PhoneIndex.Entry find(String phone) {
+        if (!refreshed) {
+            snapshot.refresh();
+            refreshed = true;
+        }
+        return snapshot.find(phone);
+    }
+
+    @Override
+    public void onContactSaved(String phone, PhoneIndex.Entry entry) {
+        snapshot.put(phone, entry);
+    }
+
+    @Override
+    public void onContactRenamed(PhoneIndex.Entry entry, String newName) {
+        snapshot.rename(entry.contactId, newName);
+    }
+}
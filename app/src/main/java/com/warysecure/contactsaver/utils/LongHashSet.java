@@ -0,0 +1,112 @@
+package com.warysecure.contactsaver.utils;
+
+import java.util.Arrays;
+
+/**
+ * Compact open-addressing set of primitive longs.
+ * Values live in one dense array in insertion order; the hash table only
+ * holds int positions into it. That is about 16 bytes per entry instead of
+ * the ~100 bytes of a boxed HashSet entry, and lookups never allocate.
+ * Removal is not supported; the set only grows until cleared.
+ */
+public class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] values;
+    private int[] table; // position + 1 into values, 0 means empty
+    private int size;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        values = new long[capacity / 2];
+        table = new int[capacity];
+    }
+
+    /**
+     * Add a value.
+     *
+     * @return true if the value was not already present
+     */
+    public boolean add(long value) {
+        int mask = table.length - 1;
+        int slot = hash(value) & mask;
+        while (table[slot] != 0) {
+            if (values[table[slot] - 1] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == values.length) {
+            grow();
+            return add(value);
+        }
+        values[size] = value;
+        table[slot] = ++size;
+        return true;
+    }
+
+    public boolean contains(long value) {
+        int mask = table.length - 1;
+        int slot = hash(value) & mask;
+        while (table[slot] != 0) {
+            if (values[table[slot] - 1] == value) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Get a value by insertion position.
+     *
+     * @param position 0 for the first value added, size() - 1 for the last
+     */
+    public long get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+        }
+        return values[position];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        values = Arrays.copyOf(values, values.length * 2);
+        table = new int[table.length * 2];
+
+        int mask = table.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(values[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+    }
+
+    private static int hash(long value) {
+        // MurmurHash3 finalizer, spreads sequential phone numbers across the table
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
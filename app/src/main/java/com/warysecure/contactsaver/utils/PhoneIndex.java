@@ -0,0 +1,134 @@
+package com.warysecure.contactsaver.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory index of device phone numbers.
+ * Built once per sync from a single pass over the Phone table, then kept
+ * up to date as contacts are inserted or updated, so every lookup is O(1).
+ *
+ * Matching follows the same rules as the old full-table scan:
+ * - exact match on the normalized number first
+ * - otherwise match on the last 10 digits when both numbers have at least 10
+ */
+public class PhoneIndex {
+    private static final int SUFFIX_LENGTH = 10;
+
+    private final Map<String, Entry> byNumber = new HashMap<>();
+    private final Map<String, Entry> bySuffix = new HashMap<>();
+
+    /**
+     * A device contact owning one or more indexed numbers.
+     * Never changed once built, so it can be read outside any lock; a rename
+     * by this app replaces it, see replace(), so a repeated sync can tell
+     * when a write would change nothing.
+     */
+    public static class Entry {
+        public final String contactId;
+        public final String lookupKey;
+        public final String rawContactId;
+        public final String displayName;
+        public final boolean hasStructuredName;
+
+        public Entry(String contactId, String lookupKey) {
+            this(contactId, lookupKey, null, null, false);
+        }
+
+        public Entry(String contactId, String lookupKey, String rawContactId, String displayName, boolean hasStructuredName) {
+            this.contactId = contactId;
+            this.lookupKey = lookupKey;
+            this.rawContactId = rawContactId;
+            this.displayName = displayName;
+            this.hasStructuredName = hasStructuredName;
+        }
+
+        /**
+         * Stable identifier to report back to the server.
+         * The lookup key survives contact aggregation changes; the contact ID does not.
+         */
+        public String deviceContactId() {
+            return lookupKey != null ? lookupKey : contactId;
+        }
+    }
+
+    /**
+     * Add a device phone number to the index.
+     * The first contact seen for a number wins, like the first cursor row did.
+     *
+     * @param number The phone number as stored on the device
+     * @param entry The contact owning the number
+     */
+    public void put(String number, Entry entry) {
+        if (number == null || entry == null || entry.contactId == null) return;
+
+        String normalized = normalize(number);
+        if (!byNumber.containsKey(normalized)) {
+            byNumber.put(normalized, entry);
+        }
+
+        String suffix = suffix(normalized);
+        if (suffix != null && !bySuffix.containsKey(suffix)) {
+            bySuffix.put(suffix, entry);
+        }
+    }
+
+    /**
+     * Point a number at a new entry where it pointed at an old one, e.g.
+     * the same contact under its new name.
+     *
+     * @param number The phone number as stored on the device
+     * @param old The entry to replace
+     * @param entry The entry that takes its place
+     */
+    public void replace(String number, Entry old, Entry entry) {
+        if (number == null) return;
+
+        String normalized = normalize(number);
+        if (byNumber.get(normalized) == old) {
+            byNumber.put(normalized, entry);
+        }
+
+        String suffix = suffix(normalized);
+        if (suffix != null && bySuffix.get(suffix) == old) {
+            bySuffix.put(suffix, entry);
+        }
+    }
+
+    /**
+     * Find the contact owning a phone number.
+     *
+     * @param phone The phone number to search for
+     * @return The owning contact if found, null otherwise
+     */
+    public Entry find(String phone) {
+        if (phone == null) return null;
+
+        String normalized = normalize(phone);
+        Entry entry = byNumber.get(normalized);
+        if (entry != null) {
+            return entry;
+        }
+
+        String suffix = suffix(normalized);
+        return suffix != null ? bySuffix.get(suffix) : null;
+    }
+
+    public int size() {
+        return byNumber.size();
+    }
+
+    public void clear() {
+        byNumber.clear();
+        bySuffix.clear();
+    }
+
+    private static String normalize(String number) {
+        return PhoneNormalizer.normalize(number);
+    }
+
+    private static String suffix(String normalized) {
+        if (normalized.length() < SUFFIX_LENGTH) return null;
+        return normalized.substring(normalized.length() - SUFFIX_LENGTH);
+    }
+}
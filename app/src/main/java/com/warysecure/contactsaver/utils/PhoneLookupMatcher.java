@@ -0,0 +1,70 @@
+package com.warysecure.contactsaver.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.ContactsContract;
+
+/**
+ * Matches numbers with ContactsContract.PhoneLookup.
+ * The provider answers from its own index on normalized numbers, so each
+ * lookup is one indexed query and nothing is held in memory. Matching uses
+ * the platform's loose number comparison rather than the last-10-digit rule.
+ */
+public class PhoneLookupMatcher implements PhoneMatcher {
+    private Context context;
+
+    public PhoneLookupMatcher(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public PhoneIndex.Entry find(String phone) {
+        if (phone == null || phone.trim().isEmpty()) {
+            return null;
+        }
+
+        ContentResolver resolver = context.getContentResolver();
+        Uri uri = Uri.withAppendedPath(ContactsContract.PhoneLookup.CONTENT_FILTER_URI, Uri.encode(phone));
+        
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                    uri,
+                    new String[]{
+                            ContactsContract.PhoneLookup._ID,
+                            ContactsContract.PhoneLookup.LOOKUP_KEY,
+                            ContactsContract.PhoneLookup.DISPLAY_NAME,
+                            ContactsContract.PhoneLookup.DISPLAY_NAME_SOURCE
+                    },
+                    null,
+                    null,
+                    null
+            );
+            
+            if (cursor != null && cursor.moveToFirst()) {
+                // PhoneLookup has no raw contact ID, so a missing name row is added by the update fallback
+                return new PhoneIndex.Entry(cursor.getString(0), cursor.getString(1), null, cursor.getString(2),
+                        cursor.getInt(3) == ContactsContract.DisplayNameSources.STRUCTURED_NAME);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void onContactSaved(String phone, PhoneIndex.Entry entry) {
+        // The provider indexes new rows itself
+    }
+
+    @Override
+    public void onContactRenamed(PhoneIndex.Entry entry, String newName) {
+        // Every lookup reads the current name
+    }
+}
@@ -0,0 +1,36 @@
+package com.warysecure.contactsaver.utils;
+
+/**
+ * Strategy for finding the device contact that owns a phone number.
+ * Chosen from the "lookup_strategy" setting by ServerContactSaver.
+ */
+public interface PhoneMatcher {
+    String STRATEGY_INDEXED = "indexed";
+    String STRATEGY_PHONE_LOOKUP = "phone_lookup";
+    String STRATEGY_SCAN_ALL = "scan_all";
+
+    /**
+     * Find the contact owning a phone number.
+     *
+     * @param phone The phone number to search for
+     * @return The owning contact if found, null otherwise
+     */
+    PhoneIndex.Entry find(String phone);
+
+    /**
+     * Called after a contact with this number was written to the device,
+     * so strategies that cache device numbers can stay up to date.
+     *
+     * @param phone The phone number that was saved
+     * @param entry The contact owning it
+     */
+    void onContactSaved(String phone, PhoneIndex.Entry entry);
+
+    /**
+     * Called after the name of a contact found by find() was written to the device.
+     *
+     * @param entry The contact as find() returned it
+     * @param newName The name it has now
+     */
+    void onContactRenamed(PhoneIndex.Entry entry, String newName);
+}
@@ -0,0 +1,207 @@
+package com.warysecure.contactsaver.utils;
+
+/**
+ * Single-pass phone number normalization.
+ * Replaces the replaceAll("[^0-9+]", "") calls in the hot paths: no regex,
+ * no allocation when the input is already normalized, and a direct path
+ * from raw text to the packed key used by PhoneNumberSet.
+ *
+ * An instance can also canonicalize numbers to E.164 using a default
+ * country code, e.g. "0301 1234567" with "92" becomes "+923011234567".
+ */
+public class PhoneNormalizer {
+    private static final long[] POWERS_OF_TEN = new long[PhoneNumberSet.MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final String defaultCountryCode;
+    private final long countryCodeKey;
+
+    /**
+     * @param defaultCountryCode Country calling code without '+' (e.g. "92"),
+     *                           or empty to leave national numbers as they are
+     */
+    public PhoneNormalizer(String defaultCountryCode) {
+        this.defaultCountryCode = defaultCountryCode != null
+                ? normalize(defaultCountryCode).replace("+", "")
+                : "";
+        this.countryCodeKey = PhoneNumberSet.encode(this.defaultCountryCode);
+    }
+
+    /**
+     * Keep only digits and '+', like replaceAll("[^0-9+]", "").
+     * Returns the input itself when it is already normalized.
+     *
+     * @param number The raw phone number
+     * @return The normalized number
+     */
+    public static String normalize(CharSequence number) {
+        int length = number.length();
+        int firstDropped = 0;
+        while (firstDropped < length && isKept(number.charAt(firstDropped))) {
+            firstDropped++;
+        }
+        if (firstDropped == length) {
+            return number.toString();
+        }
+
+        char[] out = new char[length - 1];
+        int size = 0;
+        for (int i = 0; i < firstDropped; i++) {
+            out[size++] = number.charAt(i);
+        }
+        for (int i = firstDropped + 1; i < length; i++) {
+            char c = number.charAt(i);
+            if (isKept(c)) {
+                out[size++] = c;
+            }
+        }
+        return new String(out, 0, size);
+    }
+
+    /**
+     * Normalize into a caller-owned buffer, for loops that normalize many
+     * numbers and only need to compare or hash the result.
+     *
+     * @param number The raw phone number
+     * @param out The buffer to fill; cleared first
+     * @return The same buffer
+     */
+    public static StringBuilder normalize(CharSequence number, StringBuilder out) {
+        out.setLength(0);
+        for (int i = 0, length = number.length(); i < length; i++) {
+            char c = number.charAt(i);
+            if (isKept(c)) {
+                out.append(c);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Count the digits of a number, ignoring '+' and separators.
+     */
+    public static int digitCount(CharSequence number) {
+        int count = 0;
+        for (int i = 0, length = number.length(); i < length; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Normalize straight into a PhoneNumberSet key without building a String.
+     * Gives the same key as PhoneNumberSet.encode(normalize(number)).
+     *
+     * @param number The raw phone number
+     * @return The packed key, or PhoneNumberSet.NO_KEY if it cannot be packed
+     */
+    public static long toKey(CharSequence number) {
+        boolean plus = false;
+        boolean started = false;
+        int digits = 0;
+        long value = 0;
+
+        for (int i = 0, length = number.length(); i < length; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > PhoneNumberSet.MAX_DIGITS) {
+                    return PhoneNumberSet.NO_KEY;
+                }
+                value = value * 10 + (c - '0');
+                started = true;
+            } else if (c == '+') {
+                if (started) {
+                    return PhoneNumberSet.NO_KEY;
+                }
+                plus = true;
+                started = true;
+            }
+        }
+        return digits == 0 ? PhoneNumberSet.NO_KEY : PhoneNumberSet.pack(plus, digits, value);
+    }
+
+    /**
+     * Normalize and canonicalize to E.164 where the country is known.
+     * - "+..." is kept as is
+     * - "00..." becomes "+..."
+     * - with a default country code, "0..." drops the trunk prefix and
+     *   gains "+" and the country code; other numbers of at most 10 digits
+     *   are treated as national and gain them too
+     *
+     * @param number The raw phone number
+     * @return The canonical number, or the normalized number if unknown
+     */
+    public String canonicalize(CharSequence number) {
+        String normalized = normalize(number);
+        if (normalized.isEmpty() || normalized.charAt(0) == '+') {
+            return normalized;
+        }
+        if (normalized.startsWith("00")) {
+            return "+" + normalized.substring(2);
+        }
+        if (defaultCountryCode.isEmpty()) {
+            return normalized;
+        }
+        if (normalized.charAt(0) == '0') {
+            return "+" + defaultCountryCode + normalized.substring(1);
+        }
+        if (normalized.length() <= 10) {
+            return "+" + defaultCountryCode + normalized;
+        }
+        return normalized;
+    }
+
+    /**
+     * Same as canonicalize(String), applied to a PhoneNumberSet key.
+     *
+     * @param key The key of a normalized number
+     * @return The key of the canonical number, or PhoneNumberSet.NO_KEY when
+     *         the result does not pack and the String form has to be used
+     */
+    public long canonicalize(long key) {
+        if (key == PhoneNumberSet.NO_KEY || PhoneNumberSet.hasPlus(key)) {
+            return key;
+        }
+        int digits = PhoneNumberSet.digitCount(key);
+        long value = PhoneNumberSet.digitsValue(key);
+
+        if (digits >= 2 && value < POWERS_OF_TEN[digits - 2]) {
+            return digits > 2 ? PhoneNumberSet.pack(true, digits - 2, value) : PhoneNumberSet.NO_KEY;
+        }
+        if (defaultCountryCode.isEmpty()) {
+            return key;
+        }
+        if (value < POWERS_OF_TEN[digits - 1]) {
+            return withCountryCode(digits - 1, value);
+        }
+        if (digits <= 10) {
+            return withCountryCode(digits, value);
+        }
+        return key;
+    }
+
+    private long withCountryCode(int digits, long value) {
+        if (countryCodeKey == PhoneNumberSet.NO_KEY) {
+            return PhoneNumberSet.NO_KEY;
+        }
+        int countryDigits = PhoneNumberSet.digitCount(countryCodeKey);
+        if (countryDigits + digits > PhoneNumberSet.MAX_DIGITS) {
+            return PhoneNumberSet.NO_KEY;
+        }
+        long countryValue = PhoneNumberSet.digitsValue(countryCodeKey);
+        return PhoneNumberSet.pack(true, countryDigits + digits, countryValue * POWERS_OF_TEN[digits] + value);
+    }
+
+    private static boolean isKept(char c) {
+        return (c >= '0' && c <= '9') || c == '+';
+    }
+}
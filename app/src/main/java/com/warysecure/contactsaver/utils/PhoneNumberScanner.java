@@ -0,0 +1,167 @@
+package com.warysecure.contactsaver.utils;
+
+/**
+ * Finds phone numbers in text without regex or intermediate Strings.
+ * Recognizes exactly what the scanner's former PHONE_PATTERN found:
+ *
+ *   \+?[0-9]{1,4}[\s\-]?[0-9]{2,4}[\s\-]?[0-9]{3,4}[\s\-]?[0-9]{3,4}
+ *
+ * including its greedy, backtracking choice of groups, so every match has
+ * the same bounds as Matcher.find() would give. Each match is reported as a
+ * PhoneNumberSet key plus its digit count.
+ *
+ * Used like a Matcher and meant to be reused:
+ *   scanner.reset(text);
+ *   while (scanner.find()) { long key = scanner.key(); ... }
+ */
+public class PhoneNumberScanner {
+    /**
+     * The regex this scanner replaces, kept for equivalence checks.
+     */
+    public static final String REFERENCE_PATTERN =
+            "\\+?[0-9]{1,4}[\\s\\-]?[0-9]{2,4}[\\s\\-]?[0-9]{3,4}[\\s\\-]?[0-9]{3,4}";
+
+    private static final int GROUP_COUNT = 4;
+    private static final int[] GROUP_MIN = {1, 2, 3, 3};
+    private static final int[] GROUP_MAX = {4, 4, 4, 4};
+
+    private CharSequence text = "";
+    private int length = 0;
+    private int next = 0;
+    private int start = -1;
+    private int end = -1;
+    private long key = PhoneNumberSet.NO_KEY;
+    private int digitCount = 0;
+
+    /**
+     * Start scanning a new text from its beginning.
+     *
+     * @param text The text to scan
+     * @return This scanner
+     */
+    public PhoneNumberScanner reset(CharSequence text) {
+        this.text = text;
+        this.length = text.length();
+        this.next = 0;
+        this.start = -1;
+        this.end = -1;
+        this.key = PhoneNumberSet.NO_KEY;
+        this.digitCount = 0;
+        return this;
+    }
+
+    /**
+     * Find the next phone number after the previous match.
+     *
+     * @return true if a number was found
+     */
+    public boolean find() {
+        for (int i = next; i < length; i++) {
+            char c = text.charAt(i);
+            if (c != '+' && !isDigit(c)) continue;
+
+            int matchEnd = matchFrom(i);
+            if (matchEnd >= 0) {
+                start = i;
+                end = matchEnd;
+                next = matchEnd;
+                readKey();
+                return true;
+            }
+        }
+        next = length;
+        start = -1;
+        end = -1;
+        return false;
+    }
+
+    /**
+     * The match as a PhoneNumberSet key, equal to encoding the match normalized.
+     */
+    public long key() {
+        return key;
+    }
+
+    /**
+     * Number of digits in the match, not counting '+' or separators.
+     */
+    public int digitCount() {
+        return digitCount;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    /**
+     * Try to match at one position, preferring a leading '+' like "\+?".
+     *
+     * @return The end of the match, or -1 if none starts here
+     */
+    private int matchFrom(int position) {
+        if (text.charAt(position) == '+') {
+            // Without the '+' the first group would have to start on '+', so only one option
+            return matchGroup(position + 1, 0);
+        }
+        return matchGroup(position, 0);
+    }
+
+    /**
+     * Match a digit group and everything after it, backtracking like the regex:
+     * longest group first, and an optional separator taken before skipped.
+     *
+     * @return The end of the match, or -1 if the rest cannot match
+     */
+    private int matchGroup(int position, int group) {
+        int available = 0;
+        while (available < GROUP_MAX[group] && position + available < length
+                && isDigit(text.charAt(position + available))) {
+            available++;
+        }
+
+        for (int count = available; count >= GROUP_MIN[group]; count--) {
+            int groupEnd = position + count;
+            if (group == GROUP_COUNT - 1) {
+                return groupEnd;
+            }
+            if (groupEnd < length && isSeparator(text.charAt(groupEnd))) {
+                int matchEnd = matchGroup(groupEnd + 1, group + 1);
+                if (matchEnd >= 0) return matchEnd;
+            }
+            int matchEnd = matchGroup(groupEnd, group + 1);
+            if (matchEnd >= 0) return matchEnd;
+        }
+        return -1;
+    }
+
+    private void readKey() {
+        boolean plus = text.charAt(start) == '+';
+        int digits = 0;
+        long value = 0;
+        for (int i = plus ? start + 1 : start; i < end; i++) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                value = value * 10 + (c - '0');
+                digits++;
+            }
+        }
+        // At most 16 digits by construction, so the match always packs
+        digitCount = digits;
+        key = PhoneNumberSet.pack(plus, digits, value);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Same characters as [\s\-] without UNICODE_CHARACTER_CLASS.
+     */
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -0,0 +1,161 @@
+package com.warysecure.contactsaver.utils;
+
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Set of normalized phone numbers stored as packed long keys.
+ * Behaves like a Set of Strings for existing callers, while lookups by key
+ * cost no allocation. Numbers that cannot be packed (more than 16 digits,
+ * or a '+' anywhere but the start) are kept as Strings on the side.
+ *
+ * Key layout: bits 0-53 hold the digits as a number, bits 54-58 the digit
+ * count (so leading zeros survive), bit 59 the leading '+'.
+ */
+public class PhoneNumberSet extends AbstractSet<String> {
+    public static final long NO_KEY = -1L;
+
+    static final int MAX_DIGITS = 16;
+    private static final int LENGTH_SHIFT = 54;
+    private static final long PLUS_FLAG = 1L << 59;
+    private static final long DIGITS_MASK = (1L << LENGTH_SHIFT) - 1;
+
+    private final LongHashSet keys = new LongHashSet();
+    private final Set<String> unpacked = new HashSet<>();
+
+    /**
+     * Pack a normalized number ("+" followed by digits, or digits only).
+     *
+     * @param normalized The normalized number
+     * @return The packed key, or NO_KEY if the number cannot be packed
+     */
+    public static long encode(CharSequence normalized) {
+        int length = normalized.length();
+        int start = length > 0 && normalized.charAt(0) == '+' ? 1 : 0;
+        int digits = length - start;
+        if (digits == 0 || digits > MAX_DIGITS) {
+            return NO_KEY;
+        }
+
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            char c = normalized.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_KEY;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return pack(start == 1, digits, value);
+    }
+
+    /**
+     * Build a key from its parts, for callers that parse numbers themselves.
+     *
+     * @param plus Whether the number starts with '+'
+     * @param digits The digit count, 1 to 16
+     * @param value The digits as a number
+     * @return The packed key
+     */
+    static long pack(boolean plus, int digits, long value) {
+        return (plus ? PLUS_FLAG : 0) | ((long) digits << LENGTH_SHIFT) | value;
+    }
+
+    /**
+     * Unpack a key back into its normalized number.
+     *
+     * @param key A key produced by encode
+     * @return The normalized number
+     */
+    public static String decode(long key) {
+        int digits = digitCount(key);
+        boolean plus = hasPlus(key);
+        long value = digitsValue(key);
+
+        char[] chars = new char[digits + (plus ? 1 : 0)];
+        for (int i = chars.length - 1, n = 0; n < digits; i--, n++) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (plus) {
+            chars[0] = '+';
+        }
+        return new String(chars);
+    }
+
+    static int digitCount(long key) {
+        return (int) ((key >>> LENGTH_SHIFT) & 0x1F);
+    }
+
+    static boolean hasPlus(long key) {
+        return (key & PLUS_FLAG) != 0;
+    }
+
+    static long digitsValue(long key) {
+        return key & DIGITS_MASK;
+    }
+
+    public boolean addKey(long key) {
+        return keys.add(key);
+    }
+
+    public boolean containsKey(long key) {
+        return keys.contains(key);
+    }
+
+    @Override
+    public boolean add(String number) {
+        long key = encode(number);
+        return key != NO_KEY ? keys.add(key) : unpacked.add(number);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        long key = encode((String) o);
+        return key != NO_KEY ? keys.contains(key) : unpacked.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return keys.size() + unpacked.size();
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+        unpacked.clear();
+    }
+
+    /**
+     * Iterates packed numbers in insertion order, then unpacked ones.
+     * Each packed number is decoded into a new String as it is visited.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        final Iterator<String> unpackedIterator = unpacked.iterator();
+        return new Iterator<String>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < keys.size() || unpackedIterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (position < keys.size()) {
+                    return decode(keys.get(position++));
+                }
+                if (unpackedIterator.hasNext()) {
+                    return unpackedIterator.next();
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
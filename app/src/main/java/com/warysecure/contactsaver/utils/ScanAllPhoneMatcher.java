@@ -0,0 +1,100 @@
+package com.warysecure.contactsaver.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.ContactsContract;
+
+/**
+ * Matches numbers by walking every row of the Phone table on each lookup.
+ * This is the original strategy; it needs no memory but costs O(N) per contact.
+ */
+public class ScanAllPhoneMatcher implements PhoneMatcher {
+    private Context context;
+
+    public ScanAllPhoneMatcher(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public PhoneIndex.Entry find(String phone) {
+        ContentResolver resolver = context.getContentResolver();
+        
+        // Normalize phone number (remove spaces, dashes, parentheses, etc.)
+        String normalizedPhone = PhoneNormalizer.normalize(phone);
+        
+        Cursor cursor = null;
+        try {
+            // Query all phone numbers
+            cursor = resolver.query(
+                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                    new String[]{
+                            ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+                            ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY,
+                            ContactsContract.CommonDataKinds.Phone.NUMBER,
+                            ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID,
+                            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
+                            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME_SOURCE
+                    },
+                    null,
+                    null,
+                    null
+            );
+
+            if (cursor != null && cursor.moveToFirst()) {
+                int numberIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
+                
+                do {
+                    String existingNumber = cursor.getString(numberIndex);
+                    String normalizedExisting = PhoneNormalizer.normalize(existingNumber);
+                    
+                    // Check if numbers match (exact match or last 10 digits match for comparison)
+                    if (normalizedExisting.equals(normalizedPhone)) {
+                        return readEntry(cursor);
+                    }
+                    
+                    // Compare last 10 digits if both numbers are at least 10 digits
+                    // This handles international format differences
+                    if (normalizedExisting.length() >= 10 && normalizedPhone.length() >= 10) {
+                        String existingLast10 = normalizedExisting.substring(normalizedExisting.length() - 10);
+                        String phoneLast10 = normalizedPhone.substring(normalizedPhone.length() - 10);
+                        if (existingLast10.equals(phoneLast10)) {
+                            return readEntry(cursor);
+                        }
+                    }
+                } while (cursor.moveToNext());
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        
+        return null;
+    }
+
+    /**
+     * Read the contact of the current Phone row.
+     */
+    private PhoneIndex.Entry readEntry(Cursor cursor) {
+        return new PhoneIndex.Entry(
+                cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.CONTACT_ID)),
+                cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY)),
+                cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.RAW_CONTACT_ID)),
+                cursor.getString(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME)),
+                cursor.getInt(cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME_SOURCE))
+                        == ContactsContract.DisplayNameSources.STRUCTURED_NAME);
+    }
+
+    @Override
+    public void onContactSaved(String phone, PhoneIndex.Entry entry) {
+        // Nothing cached, the next scan sees the new row
+    }
+
+    @Override
+    public void onContactRenamed(PhoneIndex.Entry entry, String newName) {
+        // Nothing cached, the next scan reads the new name
+    }
+}
@@ -1,22 +1,46 @@
 package com.warysecure.contactsaver.utils;
 
 import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.net.Uri;
 import android.provider.ContactsContract;
 
 import com.warysecure.contactsaver.models.ServerContact;
+import com.warysecure.contactsaver.models.SyncResult;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ServerContactSaver {
+    // Contacts provider allows at most 500 operations between yield points
+    private static final int MAX_OPS_PER_BATCH = 400;
+    private static final PhoneIndex.Entry PENDING = new PhoneIndex.Entry("pending", null);
+
+    private static final String PREFS_NAME = "settings";
+
     private Context context;
+    private PhoneMatcher phoneMatcher;
 
     public ServerContactSaver(Context context) {
         this.context = context;
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String strategy = prefs.getString("lookup_strategy", PhoneMatcher.STRATEGY_INDEXED);
+        if (PhoneMatcher.STRATEGY_PHONE_LOOKUP.equals(strategy)) {
+            this.phoneMatcher = new PhoneLookupMatcher(context);
+        } else if (PhoneMatcher.STRATEGY_SCAN_ALL.equals(strategy)) {
+            this.phoneMatcher = new ScanAllPhoneMatcher(context);
+        } else {
+            this.phoneMatcher = new IndexedPhoneMatcher(context);
+        }
     }
 
     /**
@@ -26,80 +50,232 @@ public class ServerContactSaver {
      * - If contact doesn't exist, CREATE new contact with the name
      * 
      * @param contact The server contact to save
-     * @return Device contact ID if successful, null if failed
+     * @return Device contact lookup key if successful, null if failed
      */
     public String saveContact(ServerContact contact) {
+        List<ServerContact> contacts = new ArrayList<>();
+        contacts.add(contact);
+        return saveContacts(contacts).get(0).deviceContactId;
+    }
+
+    /**
+     * Save or update a list of contacts from the server.
+     * Inserts and updates are packed into chunked provider batches with
+     * yield points between contacts, so a sync costs one provider
+     * transaction per chunk instead of one per contact.
+     * 
+     * @param contacts The server contacts to save
+     * @return One result per contact, in the same order ("synced" or "failed")
+     */
+    public List<SyncResult> saveContacts(List<ServerContact> contacts) {
+        List<SyncResult> results = new ArrayList<>(contacts.size());
+        ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+        List<PendingWrite> pending = new ArrayList<>();
+        PhoneIndex pendingPhones = new PhoneIndex();
+
+        for (ServerContact contact : contacts) {
+            SyncResult result = new SyncResult(contact.id, null, "failed");
+            results.add(result);
+
+            try {
+                // Use the actual applicant name from the server
+                String contactName = (contact.name != null && !contact.name.isEmpty()) 
+                    ? contact.name 
+                    : "Unknown Contact";
+
+                // Keep each contact's operations inside a single batch, and commit a number
+                // inserted earlier in this chunk before it can be updated
+                if (ops.size() + 4 > MAX_OPS_PER_BATCH || pendingPhones.find(contact.phone) != null) {
+                    applyPending(ops, pending);
+                    pendingPhones.clear();
+                }
+
+                // Check if contact with this phone number already exists
+                PhoneIndex.Entry existing = findContactByPhone(contact.phone);
+                
+                if (existing != null && contactName.equals(existing.displayName)) {
+                    // Name already matches, nothing to write
+                    result.deviceContactId = existing.deviceContactId();
+                    result.status = "synced";
+                } else if (existing != null) {
+                    // UPDATE existing contact name
+                    pending.add(new PendingWrite(result, contact, contactName, existing, ops.size()));
+                    addUpdateNameOps(ops, existing, contactName);
+                } else {
+                    // CREATE new contact
+                    pending.add(new PendingWrite(result, contact, contactName, null, ops.size()));
+                    addInsertOps(ops, contactName, contact.phone, contact.email);
+                    pendingPhones.put(contact.phone, PENDING);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        applyPending(ops, pending);
+        return results;
+    }
+
+    /**
+     * Apply the accumulated operations as one batch and fill in the results.
+     * If the batch fails, each contact in it is retried on its own so one
+     * bad contact does not fail the whole chunk.
+     * 
+     * @param ops The operations to apply (cleared afterwards)
+     * @param pending The contacts those operations belong to (cleared afterwards)
+     */
+    private void applyPending(ArrayList<ContentProviderOperation> ops, List<PendingWrite> pending) {
+        if (ops.isEmpty()) {
+            return;
+        }
+
+        ContentResolver resolver = context.getContentResolver();
         try {
-            // Use the actual applicant name from the server
-            String contactName = (contact.name != null && !contact.name.isEmpty()) 
-                ? contact.name 
-                : "Unknown Contact";
+            ContentProviderResult[] batchResults = resolver.applyBatch(ContactsContract.AUTHORITY, ops);
 
-            // Check if contact with this phone number already exists
-            String existingContactId = findContactByPhone(contact.phone);
-            
-            if (existingContactId != null) {
-                // UPDATE existing contact name
-                updateContactName(existingContactId, contactName);
-                return existingContactId;
-            } else {
-                // CREATE new contact
-                return createNewContact(contactName, contact.phone, contact.email);
+            // The raw contact insert result carries the new raw contact ID
+            List<Long> rawContactIds = new ArrayList<>();
+            for (PendingWrite write : pending) {
+                if (write.existing == null) {
+                    rawContactIds.add(ContentUris.parseId(batchResults[write.opIndex].uri));
+                }
             }
+            Map<Long, PhoneIndex.Entry> inserted = resolveRawContacts(rawContactIds);
 
+            for (PendingWrite write : pending) {
+                if (write.existing != null) {
+                    // No name row was updated, so the contact has none yet
+                    Integer count = batchResults[write.opIndex].count;
+                    if (count != null && count == 0) {
+                        insertContactName(write.existing.contactId, write.name);
+                    }
+                    // Only now that the batch is in; later contacts compare against the new name
+                    phoneMatcher.onContactRenamed(write.existing, write.name);
+                    write.complete(write.existing.deviceContactId());
+                } else {
+                    // Keep the index up to date with the newly created contact
+                    long rawContactId = ContentUris.parseId(batchResults[write.opIndex].uri);
+                    PhoneIndex.Entry entry = inserted.get(rawContactId);
+                    if (entry != null) {
+                        entry = new PhoneIndex.Entry(entry.contactId, entry.lookupKey,
+                                String.valueOf(rawContactId), write.name, true);
+                        phoneMatcher.onContactSaved(write.contact.phone, entry);
+                        write.complete(entry.deviceContactId());
+                    } else {
+                        write.complete("content://contacts/new");
+                    }
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
-            return null;
+
+            // Yield points may have committed part of the batch, so check before re-inserting
+            for (PendingWrite write : pending) {
+                if (write.existing != null) {
+                    updateContactName(write.existing.contactId, write.name);
+                    write.complete(write.existing.deviceContactId());
+                } else {
+                    PhoneIndex.Entry entry = findInsertedContact(write.contact.phone);
+                    if (entry != null) {
+                        phoneMatcher.onContactSaved(write.contact.phone, entry);
+                        write.complete(entry.deviceContactId());
+                    } else {
+                        write.complete(createNewContact(write.name, write.contact.phone, write.contact.email));
+                    }
+                }
+            }
+        } finally {
+            ops.clear();
+            pending.clear();
         }
     }
 
     /**
      * Find a contact by phone number.
-     * Normalizes phone numbers to handle different formats.
+     * Uses the lookup strategy chosen in settings.
      * 
      * @param phone The phone number to search for
-     * @return Contact ID if found, null otherwise
+     * @return The owning contact if found, null otherwise
      */
-    private String findContactByPhone(String phone) {
+    private PhoneIndex.Entry findContactByPhone(String phone) {
+        return phoneMatcher.find(phone);
+    }
+
+    /**
+     * Resolve newly inserted raw contacts to their aggregate contacts.
+     * One query per chunk, filtered on the raw contact IDs from the batch results.
+     * 
+     * @param rawContactIds Raw contact IDs taken from the insert results
+     * @return Owning contact for each raw contact ID that could be resolved
+     */
+    private Map<Long, PhoneIndex.Entry> resolveRawContacts(List<Long> rawContactIds) {
+        Map<Long, PhoneIndex.Entry> entries = new HashMap<>();
+        if (rawContactIds.isEmpty()) {
+            return entries;
+        }
+
+        StringBuilder where = new StringBuilder(ContactsContract.Data.RAW_CONTACT_ID + " IN (");
+        for (int i = 0; i < rawContactIds.size(); i++) {
+            where.append(i == 0 ? "" : ",").append(rawContactIds.get(i));
+        }
+        where.append(") AND ").append(ContactsContract.Data.MIMETYPE).append(" = ?");
+
         ContentResolver resolver = context.getContentResolver();
-        
-        // Normalize phone number (remove spaces, dashes, parentheses, etc.)
-        String normalizedPhone = phone.replaceAll("[^+0-9]", "");
-        
         Cursor cursor = null;
         try {
-            // Query all phone numbers
             cursor = resolver.query(
-                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                    new String[]{ContactsContract.CommonDataKinds.Phone.CONTACT_ID, ContactsContract.CommonDataKinds.Phone.NUMBER},
-                    null,
-                    null,
+                    ContactsContract.Data.CONTENT_URI,
+                    new String[]{
+                            ContactsContract.Data.RAW_CONTACT_ID,
+                            ContactsContract.Data.CONTACT_ID,
+                            ContactsContract.Data.LOOKUP_KEY
+                    },
+                    where.toString(),
+                    new String[]{ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE},
                     null
             );
+            
+            if (cursor != null) {
+                while (cursor.moveToNext()) {
+                    entries.put(cursor.getLong(0), new PhoneIndex.Entry(cursor.getString(1), cursor.getString(2)));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return entries;
+    }
 
+    /**
+     * Find the contact of a phone number that may have just been inserted.
+     * Only used when a batch failed and its results are unavailable.
+     * Filters on the exact stored number so the provider does the work
+     * instead of walking the whole Phone table.
+     * 
+     * @param phone The phone number exactly as inserted
+     * @return The owning contact if found, null otherwise
+     */
+    private PhoneIndex.Entry findInsertedContact(String phone) {
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(
+                    ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+                    new String[]{
+                            ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+                            ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY
+                    },
+                    ContactsContract.CommonDataKinds.Phone.NUMBER + " = ?",
+                    new String[]{phone},
+                    ContactsContract.CommonDataKinds.Phone._ID + " DESC"
+            );
+            
             if (cursor != null && cursor.moveToFirst()) {
-                int contactIdIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.CONTACT_ID);
-                int numberIndex = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
-                
-                do {
-                    String existingNumber = cursor.getString(numberIndex);
-                    String normalizedExisting = existingNumber.replaceAll("[^+0-9]", "");
-                    
-                    // Check if numbers match (exact match or last 10 digits match for comparison)
-                    if (normalizedExisting.equals(normalizedPhone)) {
-                        return cursor.getString(contactIdIndex);
-                    }
-                    
-                    // Compare last 10 digits if both numbers are at least 10 digits
-                    // This handles international format differences
-                    if (normalizedExisting.length() >= 10 && normalizedPhone.length() >= 10) {
-                        String existingLast10 = normalizedExisting.substring(normalizedExisting.length() - 10);
-                        String phoneLast10 = normalizedPhone.substring(normalizedPhone.length() - 10);
-                        if (existingLast10.equals(phoneLast10)) {
-                            return cursor.getString(contactIdIndex);
-                        }
-                    }
-                } while (cursor.moveToNext());
+                return new PhoneIndex.Entry(cursor.getString(0), cursor.getString(1));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -108,10 +284,39 @@ public class ServerContactSaver {
                 cursor.close();
             }
         }
-        
         return null;
     }
 
+    /**
+     * Add the operation that writes the name of an existing contact.
+     * Updates the name row when the contact has one, otherwise inserts one
+     * into its raw contact, so either case is a single batched operation.
+     * 
+     * @param ops The batch to add to
+     * @param existing The contact to rename
+     * @param newName The new name to set
+     */
+    private void addUpdateNameOps(ArrayList<ContentProviderOperation> ops, PhoneIndex.Entry existing, String newName) {
+        if (!existing.hasStructuredName && existing.rawContactId != null) {
+            ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                    .withValue(ContactsContract.Data.RAW_CONTACT_ID, existing.rawContactId)
+                    .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+                    .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, newName)
+                    .withYieldAllowed(!ops.isEmpty())
+                    .build());
+        } else {
+            String where = ContactsContract.Data.CONTACT_ID + " = ? AND " +
+                           ContactsContract.Data.MIMETYPE + " = ?";
+            String[] args = {existing.contactId, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE};
+
+            ops.add(ContentProviderOperation.newUpdate(ContactsContract.Data.CONTENT_URI)
+                    .withSelection(where, args)
+                    .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, newName)
+                    .withYieldAllowed(!ops.isEmpty())
+                    .build());
+        }
+    }
+
     /**
      * Update the name of an existing contact.
      * 
@@ -133,15 +338,31 @@ public class ServerContactSaver {
             
             // If no name record exists for this contact, create one
             if (updated == 0) {
-                // Find the raw contact ID for this contact
-                String rawContactId = getRawContactId(contactId);
-                if (rawContactId != null) {
-                    ContentValues nameValues = new ContentValues();
-                    nameValues.put(ContactsContract.Data.RAW_CONTACT_ID, rawContactId);
-                    nameValues.put(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE);
-                    nameValues.put(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, newName);
-                    resolver.insert(ContactsContract.Data.CONTENT_URI, nameValues);
-                }
+                insertContactName(contactId, newName);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Insert a name record for a contact that has none.
+     * 
+     * @param contactId The contact ID
+     * @param newName The name to set
+     */
+    private void insertContactName(String contactId, String newName) {
+        ContentResolver resolver = context.getContentResolver();
+        
+        try {
+            // Find the raw contact ID for this contact
+            String rawContactId = getRawContactId(contactId);
+            if (rawContactId != null) {
+                ContentValues nameValues = new ContentValues();
+                nameValues.put(ContactsContract.Data.RAW_CONTACT_ID, rawContactId);
+                nameValues.put(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE);
+                nameValues.put(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, newName);
+                resolver.insert(ContactsContract.Data.CONTENT_URI, nameValues);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -186,7 +407,7 @@ public class ServerContactSaver {
      * @param name Contact name (actual applicant name)
      * @param phone Contact phone number
      * @param email Contact email (optional)
-     * @return Device contact ID if successful, null if failed
+     * @return Device contact lookup key if successful, null if failed
      */
     private String createNewContact(String name, String phone, String email) {
         ContentResolver resolver = context.getContentResolver();
@@ -194,52 +415,98 @@ public class ServerContactSaver {
         try {
             // Prepare operations to insert contact
             ArrayList<ContentProviderOperation> ops = new ArrayList<>();
+            addInsertOps(ops, name, phone, email);
+
+            // Execute operations
+            ContentProviderResult[] results = resolver.applyBatch(ContactsContract.AUTHORITY, ops);
+
+            // Resolve the new contact from the raw contact insert result and keep the index up to date
+            long rawContactId = ContentUris.parseId(results[0].uri);
+            List<Long> rawContactIds = new ArrayList<>();
+            rawContactIds.add(rawContactId);
+            PhoneIndex.Entry entry = resolveRawContacts(rawContactIds).get(rawContactId);
+            if (entry != null) {
+                entry = new PhoneIndex.Entry(entry.contactId, entry.lookupKey, String.valueOf(rawContactId), name, true);
+                phoneMatcher.onContactSaved(phone, entry);
+            }
             
-            int rawContactIndex = ops.size();
-            
-            // Insert raw contact
-            ops.add(ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
-                    .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, (String) null)
-                    .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, (String) null)
-                    .build());
+            return entry != null ? entry.deviceContactId() : "content://contacts/new";
 
-            // Insert name
-            ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-                    .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
-                    .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
-                    .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, name)
-                    .build());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            // Insert phone number
+    /**
+     * Add the operations that insert a new contact.
+     * The raw contact insert is a yield point, so a long batch can let
+     * other provider clients in between contacts.
+     * 
+     * @param ops The batch to add to
+     * @param name Contact name (actual applicant name)
+     * @param phone Contact phone number
+     * @param email Contact email (optional)
+     */
+    private void addInsertOps(ArrayList<ContentProviderOperation> ops, String name, String phone, String email) {
+        int rawContactIndex = ops.size();
+        
+        // Insert raw contact
+        ops.add(ContentProviderOperation.newInsert(ContactsContract.RawContacts.CONTENT_URI)
+                .withValue(ContactsContract.RawContacts.ACCOUNT_TYPE, (String) null)
+                .withValue(ContactsContract.RawContacts.ACCOUNT_NAME, (String) null)
+                .withYieldAllowed(rawContactIndex > 0)
+                .build());
+
+        // Insert name
+        ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+                .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+                .withValue(ContactsContract.CommonDataKinds.StructuredName.DISPLAY_NAME, name)
+                .build());
+
+        // Insert phone number
+        ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
+                .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
+                .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
+                .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone)
+                .withValue(ContactsContract.CommonDataKinds.Phone.TYPE, ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE)
+                .build());
+
+        // Insert email if available
+        if (email != null && !email.isEmpty()) {
             ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
                     .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
-                    .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
-                    .withValue(ContactsContract.CommonDataKinds.Phone.NUMBER, phone)
-                    .withValue(ContactsContract.CommonDataKinds.Phone.TYPE, ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE)
+                    .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE)
+                    .withValue(ContactsContract.CommonDataKinds.Email.ADDRESS, email)
+                    .withValue(ContactsContract.CommonDataKinds.Email.TYPE, ContactsContract.CommonDataKinds.Email.TYPE_HOME)
                     .build());
+        }
+    }
 
-            // Insert email if available
-            if (email != null && !email.isEmpty()) {
-                ops.add(ContentProviderOperation.newInsert(ContactsContract.Data.CONTENT_URI)
-                        .withValueBackReference(ContactsContract.Data.RAW_CONTACT_ID, rawContactIndex)
-                        .withValue(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Email.CONTENT_ITEM_TYPE)
-                        .withValue(ContactsContract.CommonDataKinds.Email.ADDRESS, email)
-                        .withValue(ContactsContract.CommonDataKinds.Email.TYPE, ContactsContract.CommonDataKinds.Email.TYPE_HOME)
-                        .build());
-            }
-
-            // Execute operations
-            resolver.applyBatch(ContactsContract.AUTHORITY, ops);
+    /**
+     * A contact whose operations are queued in the current batch.
+     */
+    private static class PendingWrite {
+        final SyncResult result;
+        final ServerContact contact;
+        final String name;
+        final PhoneIndex.Entry existing;
+        final int opIndex;
 
-            // Get the newly created contact ID by phone number
-            // (We need to query it since we don't get it directly from applyBatch)
-            String newContactId = findContactByPhone(phone);
-            
-            return newContactId != null ? newContactId : "content://contacts/new";
+        PendingWrite(SyncResult result, ServerContact contact, String name, PhoneIndex.Entry existing, int opIndex) {
+            this.result = result;
+            this.contact = contact;
+            this.name = name;
+            this.existing = existing;
+            this.opIndex = opIndex;
+        }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        void complete(String deviceContactId) {
+            if (deviceContactId != null) {
+                result.deviceContactId = deviceContactId;
+                result.status = "synced";
+            }
         }
     }
 }
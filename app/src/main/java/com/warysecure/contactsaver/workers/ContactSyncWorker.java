@@ -12,14 +12,10 @@ import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
 import com.warysecure.contactsaver.api.ApiClient;
-import com.warysecure.contactsaver.models.ApiResponse;
-import com.warysecure.contactsaver.models.ServerContact;
-import com.warysecure.contactsaver.models.SyncResult;
+import com.warysecure.contactsaver.api.ContactSyncPipeline;
+import com.warysecure.contactsaver.api.SyncOutbox;
 import com.warysecure.contactsaver.utils.ServerContactSaver;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class ContactSyncWorker extends Worker {
     private static final String TAG = "ContactSyncWorker";
     private static final String PREFS_NAME = "settings";
@@ -50,42 +46,23 @@ public class ContactSyncWorker extends Worker {
         }
 
         try {
-            // Initialize API client and contact saver
-            ApiClient apiClient = new ApiClient(context);
-            ServerContactSaver contactSaver = new ServerContactSaver(context);
-
-            // Fetch pending contacts
-            List<ServerContact> pendingContacts = apiClient.getPendingContacts();
+            // Fetch, save and report back page by page, each stage on its own thread
+            ContactSyncPipeline pipeline = new ContactSyncPipeline(ApiClient.getInstance(context),
+                    new ServerContactSaver(context),
+                    SyncOutbox.getInstance(context),
+                    prefs.getInt("sync_page_size", ContactSyncPipeline.DEFAULT_PAGE_SIZE));
+            ContactSyncPipeline.Summary summary = pipeline.run();
             
-            if (pendingContacts.isEmpty()) {
+            if (summary.isEmpty()) {
                 updateLastSyncTime();
                 return Result.success();
             }
 
-            // Process contacts
-            List<SyncResult> syncResults = new ArrayList<>();
-            int savedCount = 0;
-            int failedCount = 0;
-
-            for (ServerContact contact : pendingContacts) {
-                String deviceContactId = contactSaver.saveContact(contact);
-                
-                if (deviceContactId != null) {
-                    syncResults.add(new SyncResult(contact.id, deviceContactId, "synced"));
-                    savedCount++;
-                } else {
-                    syncResults.add(new SyncResult(contact.id, null, "failed"));
-                    failedCount++;
-                }
-            }
-
-            // Report sync results back to server
-            if (!syncResults.isEmpty()) {
-                ApiResponse bulkSyncResponse = apiClient.bulkSync(syncResults);
-                if (!bulkSyncResponse.success) {
-                    // Log but don't fail the work
-                    android.util.Log.e(TAG, "Bulk sync failed: " + bulkSyncResponse.error);
-                }
+            int savedCount = summary.savedCount;
+            int failedCount = summary.failedCount;
+            if (summary.unackedCount > 0) {
+                // Log but don't fail the work
+                android.util.Log.e(TAG, "Bulk sync failed for " + summary.unackedCount + " contacts");
             }
 
             // Update last sync time
@@ -0,0 +1,49 @@
+package com.warysecure.contactsaver.api;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Retry-After parsing, in both of its forms.
+ */
+public class ApiClientTest {
+    // Wed, 21 Oct 2015 07:28:00 GMT
+    private static final long DATE_MS = 1445412480000L;
+
+    @Test
+    public void missingOrUnreadableHeaderHasNoDelay() {
+        assertEquals(-1, ApiClient.parseRetryAfter(null, DATE_MS));
+        assertEquals(-1, ApiClient.parseRetryAfter("", DATE_MS));
+        assertEquals(-1, ApiClient.parseRetryAfter("  ", DATE_MS));
+        assertEquals(-1, ApiClient.parseRetryAfter("soon", DATE_MS));
+        assertEquals(-1, ApiClient.parseRetryAfter("-5", DATE_MS));
+        assertEquals(-1, ApiClient.parseRetryAfter("1.5", DATE_MS));
+    }
+
+    @Test
+    public void secondsAreConvertedToMillis() {
+        assertEquals(0, ApiClient.parseRetryAfter("0", DATE_MS));
+        assertEquals(120000, ApiClient.parseRetryAfter("120", DATE_MS));
+        assertEquals(5000, ApiClient.parseRetryAfter(" 5 ", DATE_MS));
+    }
+
+    @Test
+    public void hugeSecondsSaturateInsteadOfOverflowing() {
+        // Long.parseLong(value) * 1000 would wrap around to a negative delay
+        assertEquals(Long.MAX_VALUE, ApiClient.parseRetryAfter("9223372036854775807", DATE_MS));
+        assertEquals(Long.MAX_VALUE, ApiClient.parseRetryAfter("9300000000000000", DATE_MS));
+        assertEquals(Long.MAX_VALUE, ApiClient.parseRetryAfter("99999999999999999999999", DATE_MS));
+    }
+
+    @Test
+    public void dateIsTheDelayFromNow() {
+        assertEquals(30000, ApiClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", DATE_MS - 30000));
+        assertEquals(0, ApiClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", DATE_MS));
+    }
+
+    @Test
+    public void pastDateMeansRetryNow() {
+        assertEquals(0, ApiClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT", DATE_MS + 60000));
+    }
+}
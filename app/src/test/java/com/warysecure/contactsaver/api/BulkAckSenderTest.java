@@ -0,0 +1,189 @@
+package com.warysecure.contactsaver.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.warysecure.contactsaver.models.SyncResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * BulkAckSender retries, chunking and idempotency keys against a MockWebServer.
+ * The backoff is shortened to a millisecond so retries without Retry-After are quick.
+ */
+public class BulkAckSenderTest {
+    private MockWebServer server;
+    private ApiClient apiClient;
+
+    // Answers in order; once used up every request succeeds
+    private final Queue<MockResponse> answers = new ConcurrentLinkedQueue<>();
+    private final List<String> idempotencyKeys = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                idempotencyKeys.add(request.getHeader("Idempotency-Key"));
+                bodies.add(request.getBody().readUtf8());
+                MockResponse answer = answers.poll();
+                return answer != null ? answer : new MockResponse().setBody("{\"success\":true}");
+            }
+        });
+        server.start();
+        apiClient = new ApiClient(server.url("/").toString(), "test-key");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void retryAfterSecondsIsWaited() {
+        answers.add(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+
+        long start = System.currentTimeMillis();
+        BulkAckSender.Outcome outcome = sender(3).send(results(1, 2, 3));
+
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(3, outcome.ackedCount);
+        assertEquals(2, outcome.requests);
+        assertEquals(0, outcome.unacked.size());
+        assertEquals(idempotencyKeys.get(0), idempotencyKeys.get(1));
+    }
+
+    @Test
+    public void retryAfterDateIsWaited() {
+        // HTTP dates have whole seconds, so two from now is at least one away
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String retryAt = format.format(new Date(System.currentTimeMillis() + 2000));
+        answers.add(new MockResponse().setResponseCode(429).setHeader("Retry-After", retryAt));
+
+        long start = System.currentTimeMillis();
+        BulkAckSender.Outcome outcome = sender(3).send(results(1, 2));
+
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(2, outcome.ackedCount);
+        assertEquals(2, outcome.requests);
+    }
+
+    @Test
+    public void serverErrorThenSuccess() {
+        answers.add(new MockResponse().setResponseCode(503));
+
+        BulkAckSender.Outcome outcome = sender(3).send(results(1, 2));
+
+        assertEquals(2, outcome.ackedCount);
+        assertEquals(2, outcome.requests);
+        assertEquals(0, outcome.unacked.size());
+    }
+
+    @Test
+    public void timeoutAndNoResponseAreRetried() {
+        answers.add(new MockResponse().setResponseCode(408));
+        // The HTTP client may retry a dropped connection once by itself; three reach the sender anyway
+        for (int i = 0; i < 3; i++) {
+            answers.add(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        }
+
+        BulkAckSender.Outcome outcome = sender(6).send(results(1, 2));
+
+        assertEquals(2, outcome.ackedCount);
+        assertEquals(0, outcome.unacked.size());
+        assertTrue(outcome.requests >= 3);
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void exhaustedRetriesLeaveTheChunkUnacked() {
+        for (int i = 0; i < 3; i++) {
+            answers.add(new MockResponse().setResponseCode(500));
+        }
+        List<SyncResult> results = results(1, 2, 3);
+
+        BulkAckSender.Outcome outcome = sender(3).send(results);
+
+        assertEquals(0, outcome.ackedCount);
+        assertEquals(3, outcome.requests);
+        assertEquals(results, outcome.unacked);
+        assertEquals(3, idempotencyKeys.size());
+        assertEquals(1, new HashSet<>(idempotencyKeys).size());
+    }
+
+    @Test
+    public void chunkOver64KbIsHalved() {
+        // About 3 KB of JSON each: 40 are too big for one request, 20 are not
+        char[] padding = new char[3000];
+        Arrays.fill(padding, 'k');
+        List<SyncResult> results = new ArrayList<>();
+        for (int id = 1; id <= 40; id++) {
+            results.add(new SyncResult(id, id + new String(padding), "synced"));
+        }
+
+        BulkAckSender.Outcome outcome = new BulkAckSender(apiClient, 100, 1, 1).send(results);
+
+        assertEquals(40, outcome.ackedCount);
+        assertEquals(2, outcome.requests);
+        int sent = 0;
+        for (String body : bodies) {
+            assertTrue(body.getBytes(StandardCharsets.UTF_8).length <= 64 * 1024);
+            JsonArray contacts = JsonParser.parseString(body).getAsJsonObject().getAsJsonArray("contacts");
+            sent += contacts.size();
+        }
+        assertEquals(40, sent);
+        assertNotEquals(idempotencyKeys.get(0), idempotencyKeys.get(1));
+    }
+
+    @Test
+    public void idempotencyKeyFollowsTheResults() {
+        String key = BulkAckSender.idempotencyKey(results(1, 2, 3));
+
+        // Resent later, e.g. from the outbox in another order: the same key
+        assertEquals(key, BulkAckSender.idempotencyKey(results(3, 1, 2)));
+        assertNotEquals(key, BulkAckSender.idempotencyKey(results(1, 2)));
+        List<SyncResult> failed = results(1, 2, 3);
+        failed.get(2).status = "failed";
+        assertNotEquals(key, BulkAckSender.idempotencyKey(failed));
+    }
+
+    private BulkAckSender sender(int maxAttempts) {
+        return new BulkAckSender(apiClient, BulkAckSender.DEFAULT_CHUNK_SIZE, maxAttempts, 1);
+    }
+
+    private static List<SyncResult> results(int... ids) {
+        List<SyncResult> results = new ArrayList<>();
+        for (int id : ids) {
+            results.add(new SyncResult(id, "lookup-" + id, "synced"));
+        }
+        return results;
+    }
+}
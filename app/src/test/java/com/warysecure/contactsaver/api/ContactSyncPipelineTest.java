@@ -0,0 +1,336 @@
+package com.warysecure.contactsaver.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.warysecure.contactsaver.models.ServerContact;
+import com.warysecure.contactsaver.models.SyncResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * ContactSyncPipeline against a MockWebServer serving pending pages and
+ * answering bulk-sync, with the device side faked in memory.
+ */
+public class ContactSyncPipelineTest {
+    private MockWebServer server;
+    private ApiClient apiClient;
+    private final FakeSaver saver = new FakeSaver();
+    private final FakeOutbox outbox = new FakeOutbox();
+
+    // Pending page bodies by after_id; a missing page is served empty
+    private final Map<Integer, MockResponse> pages = new HashMap<>();
+    // Action of every request, in the order the server received them
+    private final List<String> actions = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> fetchedAfterIds = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> ackedIds = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Integer, String> ackedDeviceIds = Collections.synchronizedMap(new HashMap<>());
+    private final List<String> idempotencyKeys = Collections.synchronizedList(new ArrayList<>());
+    private volatile int ackCode = 200;
+
+    /**
+     * Records the pages it is given and saves every contact.
+     */
+    static class FakeSaver implements ContactSyncPipeline.PageSaver {
+        final List<Integer> savedIds = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public List<SyncResult> saveContacts(List<ServerContact> contacts) {
+            List<SyncResult> results = new ArrayList<>();
+            for (ServerContact contact : contacts) {
+                savedIds.add(contact.id);
+                results.add(new SyncResult(contact.id, "lookup-" + contact.id, "synced"));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * SyncOutbox kept in memory: one row per contact id, oldest first.
+     */
+    static class FakeOutbox extends SyncOutbox {
+        private final List<Long> rowIds = new ArrayList<>();
+        private final List<SyncResult> rows = new ArrayList<>();
+        private long nextRowId = 1;
+
+        FakeOutbox() {
+            super(null);
+        }
+
+        @Override
+        public synchronized void add(List<SyncResult> results) {
+            for (SyncResult result : results) {
+                for (int i = 0; i < rows.size(); i++) {
+                    if (rows.get(i).contactId == result.contactId) {
+                        rows.remove(i);
+                        rowIds.remove(i);
+                        break;
+                    }
+                }
+                rows.add(result);
+                rowIds.add(nextRowId++);
+            }
+        }
+
+        @Override
+        public synchronized Batch next(int limit) {
+            Batch batch = new Batch();
+            for (int i = 0; i < rows.size() && i < limit; i++) {
+                batch.results.add(rows.get(i));
+                batch.rowIds.add(rowIds.get(i));
+            }
+            return batch;
+        }
+
+        @Override
+        public synchronized void confirm(Batch batch, List<SyncResult> unconfirmed) {
+            Map<SyncResult, Boolean> keep = new IdentityHashMap<>();
+            for (SyncResult result : unconfirmed) {
+                keep.put(result, Boolean.TRUE);
+            }
+            for (int i = 0; i < batch.results.size(); i++) {
+                if (keep.containsKey(batch.results.get(i))) continue;
+                int row = rowIds.indexOf(batch.rowIds.get(i));
+                if (row >= 0) {
+                    rowIds.remove(row);
+                    rows.remove(row);
+                }
+            }
+        }
+
+        @Override
+        public synchronized long size() {
+            return rows.size();
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                HttpUrl url = request.getRequestUrl();
+                String action = url.queryParameter("action");
+                actions.add(action);
+                if ("pending".equals(action)) {
+                    int afterId = Integer.parseInt(url.queryParameter("after_id"));
+                    fetchedAfterIds.add(afterId);
+                    MockResponse page = pages.get(afterId);
+                    return page != null ? page : pageOf();
+                }
+                if ("bulk-sync".equals(action)) {
+                    idempotencyKeys.add(request.getHeader("Idempotency-Key"));
+                    if (ackCode != 200) {
+                        return new MockResponse().setResponseCode(ackCode);
+                    }
+                    JsonArray contacts = JsonParser.parseString(request.getBody().readUtf8())
+                            .getAsJsonObject().getAsJsonArray("contacts");
+                    for (int i = 0; i < contacts.size(); i++) {
+                        JsonObject contact = contacts.get(i).getAsJsonObject();
+                        int id = contact.get("contact_id").getAsInt();
+                        ackedIds.add(id);
+                        ackedDeviceIds.put(id, contact.get("device_contact_id").getAsString());
+                    }
+                    return new MockResponse().setBody("{\"success\":true}");
+                }
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        server.start();
+        apiClient = new ApiClient(server.url("/").toString(), "test-key");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void emptyLastPageEndsTheSync() {
+        pages.put(0, pageOf(1, 2));
+        pages.put(2, pageOf(3, 4));
+
+        ContactSyncPipeline.Summary summary = new ContactSyncPipeline(apiClient, saver, outbox, 2).run();
+
+        assertEquals(Arrays.asList(0, 2, 4), fetchedAfterIds);
+        assertEquals(Arrays.asList(1, 2, 3, 4), saver.savedIds);
+        assertEquals(Arrays.asList(1, 2, 3, 4), sorted(ackedIds));
+        assertEquals("lookup-3", ackedDeviceIds.get(3));
+        for (String key : idempotencyKeys) {
+            assertNotNull(key);
+        }
+        assertEquals(2, summary.pages);
+        assertEquals(4, summary.savedCount);
+        assertEquals(0, summary.unackedCount);
+        assertFalse(summary.fetchFailed);
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void shortPageIsTheLast() {
+        pages.put(0, pageOf(1, 2, 3));
+        pages.put(3, pageOf(4));
+
+        ContactSyncPipeline.Summary summary = new ContactSyncPipeline(apiClient, saver, outbox, 3).run();
+
+        assertEquals(Arrays.asList(0, 3), fetchedAfterIds);
+        assertEquals(Arrays.asList(1, 2, 3, 4), sorted(ackedIds));
+        assertEquals(2, summary.pages);
+        assertFalse(summary.fetchFailed);
+    }
+
+    @Test
+    public void pageCutOffMidStreamIsNotSaved() {
+        pages.put(0, pageOf(1, 2));
+        // The connection drops in the middle of the second contact
+        pages.put(2, new MockResponse().setBody("{\"success\":true,\"contacts\":["
+                + contactJson(3) + ",{\"id\":4,\"pho"));
+
+        ContactSyncPipeline.Summary summary = new ContactSyncPipeline(apiClient, saver, outbox, 2).run();
+
+        assertTrue(summary.fetchFailed);
+        assertEquals(1, summary.pages);
+        // The finished page is still saved and acked; the broken one comes back next run
+        assertEquals(Arrays.asList(1, 2), saver.savedIds);
+        assertEquals(Arrays.asList(1, 2), sorted(ackedIds));
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void serverErrorMidSyncKeepsEarlierPages() {
+        pages.put(0, pageOf(1, 2));
+        pages.put(2, new MockResponse().setResponseCode(500));
+
+        ContactSyncPipeline.Summary summary = new ContactSyncPipeline(apiClient, saver, outbox, 2).run();
+
+        assertTrue(summary.fetchFailed);
+        assertEquals(Arrays.asList(1, 2), saver.savedIds);
+        assertEquals(Arrays.asList(1, 2), sorted(ackedIds));
+    }
+
+    @Test
+    public void rejectedAcksStayInTheOutbox() {
+        pages.put(0, pageOf(1, 2));
+        // Not retryable, so the first attempt is the only one
+        ackCode = 400;
+
+        ContactSyncPipeline.Summary summary = new ContactSyncPipeline(apiClient, saver, outbox, 5).run();
+
+        assertEquals(2, summary.savedCount);
+        assertEquals(2, summary.unackedCount);
+        assertEquals(2, outbox.size());
+
+        // The next run delivers them before anything else
+        ackCode = 200;
+        pages.clear();
+        summary = new ContactSyncPipeline(apiClient, saver, outbox, 5).run();
+
+        assertEquals(0, summary.unackedCount);
+        assertEquals(Arrays.asList(1, 2), sorted(ackedIds));
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void outboxIsDeliveredBeforeTheFirstFetch() {
+        // Saved by an earlier run whose ack never arrived; still pending on the server until acked
+        outbox.add(Collections.singletonList(new SyncResult(1, "lookup-1", "synced")));
+        pages.put(0, pageOf(2, 3));
+
+        ContactSyncPipeline.Summary summary = new ContactSyncPipeline(apiClient, saver, outbox, 5).run();
+
+        assertEquals("bulk-sync", actions.get(0));
+        assertEquals("pending", actions.get(1));
+        assertEquals(Arrays.asList(2, 3), saver.savedIds);
+        assertEquals(Arrays.asList(1, 2, 3), sorted(ackedIds));
+        assertEquals(0, summary.unackedCount);
+        assertEquals(0, outbox.size());
+    }
+
+    @Test
+    public void interruptedRunWaitsForItsThreads() throws InterruptedException {
+        pages.put(0, pageOf(1, 2));
+        pages.put(2, pageOf(3, 4));
+        pages.put(4, pageOf(5, 6));
+        CountDownLatch saving = new CountDownLatch(1);
+        AtomicBoolean saverDone = new AtomicBoolean(false);
+        // Holds the first page until interrupted, so the fetch blocks on the full queue,
+        // then takes a while to finish, as a provider batch would
+        ContactSyncPipeline.PageSaver slowSaver = contacts -> {
+            saving.countDown();
+            try {
+                Thread.sleep(60000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            long finishAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+            while (System.nanoTime() < finishAt) {
+                Thread.yield();
+            }
+            saverDone.set(true);
+            return new ArrayList<>();
+        };
+        ContactSyncPipeline pipeline = new ContactSyncPipeline(apiClient, slowSaver, outbox, 2);
+        AtomicBoolean doneWhenReturned = new AtomicBoolean(false);
+        Thread runner = new Thread(() -> {
+            pipeline.run();
+            doneWhenReturned.set(saverDone.get());
+        });
+
+        runner.start();
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        runner.interrupt();
+        runner.join(10000);
+
+        assertFalse(runner.isAlive());
+        assertTrue(doneWhenReturned.get());
+    }
+
+    private static MockResponse pageOf(int... ids) {
+        StringBuilder body = new StringBuilder("{\"success\":true,\"contacts\":[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) body.append(',');
+            body.append(contactJson(ids[i]));
+        }
+        return new MockResponse().setBody(body.append("]}").toString());
+    }
+
+    private static String contactJson(int id) {
+        return "{\"id\":" + id + ",\"application_id\":7,\"phone\":\"+9230000000" + id
+                + "\",\"name\":\"Contact " + id + "\",\"email\":null}";
+    }
+
+    private static List<Integer> sorted(List<Integer> ids) {
+        List<Integer> copy;
+        synchronized (ids) {
+            copy = new ArrayList<>(ids);
+        }
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,313 @@
+package com.warysecure.contactsaver.scanner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Rect;
+import android.view.accessibility.AccessibilityNodeInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * NodeTraversal over a fake chat list, with a NodeFingerprintCache.
+ */
+public class NodeTraversalTest {
+    private static final String LIST_ID = "android:id/list";
+
+    private NodeTraversal traversal;
+    private NodeFingerprintCache cache;
+    private final List<String> visitedTexts = new ArrayList<>();
+
+    /**
+     * A node of a fake window, answering from its fields instead of over IPC.
+     */
+    static class FakeNode extends AccessibilityNodeInfo {
+        final String viewId;
+        // Changed by a test to rebind the node in place
+        CharSequence text;
+        final List<FakeNode> children;
+
+        FakeNode(String viewId, CharSequence text, FakeNode... children) {
+            this.viewId = viewId;
+            this.text = text;
+            this.children = Arrays.asList(children);
+        }
+
+        @Override
+        public String getViewIdResourceName() {
+            return viewId;
+        }
+
+        @Override
+        public CharSequence getText() {
+            return text;
+        }
+
+        @Override
+        public CharSequence getContentDescription() {
+            return null;
+        }
+
+        @Override
+        public int getChildCount() {
+            return children.size();
+        }
+
+        @Override
+        public AccessibilityNodeInfo getChild(int index) {
+            return children.get(index);
+        }
+
+        @Override
+        public void getBoundsInScreen(Rect outBounds) {
+            // Every row has the same layout
+            outBounds.left = 0;
+            outBounds.top = 0;
+            outBounds.right = 1080;
+            outBounds.bottom = 160;
+        }
+
+        @Override
+        public boolean isVisibleToUser() {
+            return true;
+        }
+
+        @Override
+        public boolean isScrollable() {
+            return LIST_ID.equals(viewId);
+        }
+
+        @Override
+        public List<AccessibilityNodeInfo> findAccessibilityNodeInfosByViewId(String id) {
+            List<AccessibilityNodeInfo> found = new ArrayList<>();
+            collect(this, id, found);
+            return found;
+        }
+
+        @Override
+        public void recycle() {
+        }
+
+        private static void collect(FakeNode node, String id, List<AccessibilityNodeInfo> out) {
+            if (id.equals(node.viewId)) out.add(node);
+            for (FakeNode child : node.children) {
+                collect(child, id, out);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        traversal = new NodeTraversal(NodeTraversal.DEFAULT_NODE_BUDGET, NodeTraversal.DEFAULT_TIME_BUDGET_MS);
+        cache = new NodeFingerprintCache();
+        traversal.setFingerprintCache(cache);
+    }
+
+    @Test
+    public void readsRowsThatShareLayoutButNotTheirDeepTexts() {
+        FakeNode window = chatList(
+                chatRow("+92 300 1111111", "Hey there! I am using WhatsApp."),
+                chatRow("+92 300 2222222", "Hey there! I am using WhatsApp."));
+
+        NodeTraversal.Stats stats = scan(window);
+
+        assertEquals(0, stats.rowsSkipped);
+        assertTrue(visitedTexts.contains("+92 300 1111111"));
+        assertTrue(visitedTexts.contains("+92 300 2222222"));
+    }
+
+    @Test
+    public void readsNewRowWithSameLayoutInALaterScan() {
+        scan(chatList(chatRow("+92 300 1111111", "Available")));
+
+        NodeTraversal.Stats stats = scan(chatList(chatRow("+92 300 2222222", "Available")));
+
+        assertEquals(0, stats.rowsSkipped);
+        assertTrue(visitedTexts.contains("+92 300 2222222"));
+    }
+
+    @Test
+    public void skipsRowsAlreadyRead() {
+        FakeNode window = chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Photo"));
+        scan(window);
+
+        NodeTraversal.Stats stats = scan(window);
+
+        assertEquals(2, stats.rowsSkipped);
+        assertTrue(visitedTexts.isEmpty());
+    }
+
+    @Test
+    public void movementFingerprintTellsPagesOfLookAlikeRowsApart() {
+        long before = scan(chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Available"))).movementFingerprint;
+        long samePage = scan(chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Available"))).movementFingerprint;
+        long nextPage = scan(chatList(
+                chatRow("+92 300 3333333", "Available"),
+                chatRow("+92 300 4444444", "Available"))).movementFingerprint;
+
+        assertEquals(before, samePage);
+        assertNotEquals(before, nextPage);
+    }
+
+    @Test
+    public void movementFingerprintNeedsNoCache() {
+        traversal.setFingerprintCache(null);
+
+        long before = scan(chatList(chatRow("+92 300 1111111", "Photo"))).movementFingerprint;
+        long nextPage = scan(chatList(chatRow("+92 300 2222222", "Photo"))).movementFingerprint;
+
+        assertNotEquals(0, before);
+        assertNotEquals(before, nextPage);
+        assertTrue(visitedTexts.contains("+92 300 2222222"));
+    }
+
+    @Test
+    public void contentFingerprintIsStableOnceRowsAreSkipped() {
+        FakeNode window = chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Photo"));
+
+        long firstScan = scan(window).contentFingerprint;
+        NodeTraversal.Stats secondScan = scan(window);
+        assertEquals(2, secondScan.rowsSkipped);
+        assertEquals(firstScan, secondScan.contentFingerprint);
+
+        // Now skipped by row key, unfetched
+        NodeTraversal.Stats thirdScan = scan(window);
+        assertEquals(2, thirdScan.rowsSkipped);
+        assertEquals(firstScan, thirdScan.contentFingerprint);
+    }
+
+    @Test
+    public void skipsRowsReadAlikeTwiceWithoutFetchingThem() {
+        FakeNode window = chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Photo"));
+        NodeTraversal.Stats first = scan(window);
+        long movement = first.movementFingerprint;
+        // One lookup for the list, then one getChild per row and per child below it
+        assertEquals(1 + 2 * 5, first.ipcCalls);
+        scan(window);
+
+        NodeTraversal.Stats third = scan(window);
+
+        // Only the row nodes themselves are fetched
+        assertEquals(1 + 2, third.ipcCalls);
+        assertEquals(2, third.rowsSkipped);
+        assertEquals(0, third.rowsRead);
+        assertEquals(movement, third.movementFingerprint);
+        assertTrue(visitedTexts.isEmpty());
+    }
+
+    @Test
+    public void rowBoundInPlaceIsReadAgain() {
+        FakeNode row = chatRow(null, "Available");
+        FakeNode window = chatList(row);
+        scan(window);
+
+        // The view holder gets its name after the first scan
+        nameOf(row).text = "+92 300 1111111";
+        NodeTraversal.Stats stats = scan(window);
+
+        assertEquals(1, stats.rowsRead);
+        assertTrue(visitedTexts.contains("+92 300 1111111"));
+    }
+
+    @Test
+    public void rowStillBeingBoundIsReadOnceBound() {
+        // The second row's view holder still shows no name
+        long halfBound = scan(chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow(null, "Available"))).contentFingerprint;
+
+        long bound = scan(chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Available"))).contentFingerprint;
+
+        assertNotEquals(halfBound, bound);
+        assertTrue(visitedTexts.contains("+92 300 2222222"));
+    }
+
+    @Test
+    public void windowWithoutListFingerprintsItsTexts() {
+        FakeNode before = new FakeNode(null, null, new FakeNode("title", "+92 300 1111111"));
+        FakeNode after = new FakeNode(null, null, new FakeNode("title", "+92 300 2222222"));
+
+        long first = scan(before).contentFingerprint;
+        long again = scan(before).contentFingerprint;
+        long changed = scan(after).contentFingerprint;
+
+        assertEquals(first, again);
+        assertNotEquals(first, changed);
+    }
+
+    @Test
+    public void rescansReadAPageLargerThanTheBudget() {
+        // Four rows of five nodes each against a budget of eight nodes
+        traversal = new NodeTraversal(8, NodeTraversal.DEFAULT_TIME_BUDGET_MS);
+        traversal.setFingerprintCache(cache);
+        FakeNode window = chatList(
+                chatRow("+92 300 1111111", "Available"),
+                chatRow("+92 300 2222222", "Available"),
+                chatRow("+92 300 3333333", "Available"),
+                chatRow("+92 300 4444444", "Available"));
+
+        NodeTraversal.Stats stats = scan(window);
+        assertEquals(1, stats.budgetExceeded);
+        assertFalse(visitedTexts.contains("+92 300 4444444"));
+
+        List<String> read = new ArrayList<>(visitedTexts);
+        int scans = 1;
+        while (stats.budgetExceeded > 0) {
+            // Each rescan reads further, the rows before its cut-off cost one fetch each
+            assertTrue(stats.rowsRead > 0);
+            assertTrue(++scans <= 8);
+            stats = scan(window);
+            read.addAll(visitedTexts);
+        }
+
+        assertTrue(read.contains("+92 300 2222222"));
+        assertTrue(read.contains("+92 300 3333333"));
+        assertTrue(read.contains("+92 300 4444444"));
+        assertEquals(3, stats.rowsSkipped);
+    }
+
+    private static FakeNode nameOf(FakeNode chatRow) {
+        return chatRow.children.get(1).children.get(0);
+    }
+
+    private NodeTraversal.Stats scan(FakeNode window) {
+        visitedTexts.clear();
+        return traversal.traverse(window, node -> {
+            if (node.getText() != null) visitedTexts.add(node.getText().toString());
+        });
+    }
+
+    private static FakeNode chatList(FakeNode... rows) {
+        return new FakeNode(null, null, new FakeNode(LIST_ID, null, rows));
+    }
+
+    /**
+     * A chat row as WhatsApp lays it out: the texts sit two levels below the row.
+     */
+    static FakeNode chatRow(String name, String message) {
+        return new FakeNode("com.whatsapp:id/contact_row_container", null,
+                new FakeNode("com.whatsapp:id/contact_photo", null),
+                new FakeNode("com.whatsapp:id/contact_row", null,
+                        new FakeNode("com.whatsapp:id/conversations_row_contact_name", name),
+                        new FakeNode("com.whatsapp:id/single_msg_tv", message)));
+    }
+}
@@ -0,0 +1,127 @@
+package com.warysecure.contactsaver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * PhoneNormalizer must give the same results as the replaceAll("[^0-9+]", "")
+ * string paths it replaced, and its key paths the same as the String ones.
+ */
+public class PhoneNormalizerTest {
+    private static final String[] EDGE_INPUTS = {
+            "", "+", "++", "0", "00", "000", "+0", "0+1", "1+2", "+92", "92",
+            "+92 300 1234567", "+92-300-1234567", "0300 1234567", "03001234567", "3001234567",
+            "0092 300 1234567", "00 1234", "+1 (555) 123-4567", "(555) 123-4567", "555.123.4567",
+            "+44 20 7946 0958", "020 7946 0958", "tel: +92 300 1234567", "1234567890123456",
+            "12345678901234567", "+12345678901234567", "0300\u00A01234567", "\u0663\u0660\u0660 1234567",
+            "+ 92 300 1234567", " 0300 1234567 ", "abc", "--", "0300-123-4567 ext 89"
+    };
+    private static final String ALPHABET = "0123456789012345678901234567890123456789 +-()./a\u00A0";
+
+    @Test
+    public void normalizeMatchesReplaceAll() {
+        for (String input : EDGE_INPUTS) {
+            assertEquals(input, input.replaceAll("[^0-9+]", ""), PhoneNormalizer.normalize(input));
+        }
+        for (String input : randomInputs()) {
+            assertEquals(input, input.replaceAll("[^0-9+]", ""), PhoneNormalizer.normalize(input));
+        }
+    }
+
+    @Test
+    public void normalizeReturnsNormalizedInputItself() {
+        String normalized = "+923001234567";
+        assertSame(normalized, PhoneNormalizer.normalize(normalized));
+    }
+
+    @Test
+    public void normalizeIntoBufferMatchesReplaceAll() {
+        StringBuilder buffer = new StringBuilder("left over");
+        for (String input : EDGE_INPUTS) {
+            assertEquals(input, input.replaceAll("[^0-9+]", ""),
+                    PhoneNormalizer.normalize(input, buffer).toString());
+        }
+    }
+
+    @Test
+    public void digitCountMatchesReplaceAll() {
+        for (String input : EDGE_INPUTS) {
+            assertEquals(input, input.replaceAll("[^0-9]", "").length(), PhoneNormalizer.digitCount(input));
+        }
+    }
+
+    @Test
+    public void toKeyMatchesEncodedNormalize() {
+        for (String input : EDGE_INPUTS) {
+            assertEquals(input, PhoneNumberSet.encode(input.replaceAll("[^0-9+]", "")), PhoneNormalizer.toKey(input));
+        }
+        for (String input : randomInputs()) {
+            assertEquals(input, PhoneNumberSet.encode(input.replaceAll("[^0-9+]", "")), PhoneNormalizer.toKey(input));
+        }
+    }
+
+    @Test
+    public void canonicalizeToE164WithCountryCode() {
+        PhoneNormalizer normalizer = new PhoneNormalizer("92");
+        assertEquals("+923001234567", normalizer.canonicalize("0300 1234567"));
+        assertEquals("+923001234567", normalizer.canonicalize("300-1234567"));
+        assertEquals("+923001234567", normalizer.canonicalize("0092 300 1234567"));
+        assertEquals("+923001234567", normalizer.canonicalize("+92 300 1234567"));
+        assertEquals("+447946095812", normalizer.canonicalize("+44 7946 095812"));
+        assertEquals("", normalizer.canonicalize("abc"));
+    }
+
+    @Test
+    public void canonicalizeWithoutCountryCodeOnlyNormalizes() {
+        PhoneNormalizer normalizer = new PhoneNormalizer("");
+        assertEquals("03001234567", normalizer.canonicalize("0300 1234567"));
+        assertEquals("+923001234567", normalizer.canonicalize("0092 300 1234567"));
+    }
+
+    @Test
+    public void canonicalKeyMatchesCanonicalString() {
+        for (String countryCode : new String[]{"", "92", "+44", "1"}) {
+            PhoneNormalizer normalizer = new PhoneNormalizer(countryCode);
+            for (String input : EDGE_INPUTS) {
+                assertCanonicalKey(normalizer, input);
+            }
+            for (String input : randomInputs()) {
+                assertCanonicalKey(normalizer, input);
+            }
+        }
+    }
+
+    /**
+     * The key path may give up with NO_KEY, but only where the String result does not pack either.
+     */
+    private static void assertCanonicalKey(PhoneNormalizer normalizer, String input) {
+        long key = normalizer.canonicalize(PhoneNormalizer.toKey(input));
+        long expected = PhoneNumberSet.encode(normalizer.canonicalize(input));
+        if (PhoneNormalizer.toKey(input) == PhoneNumberSet.NO_KEY || key == PhoneNumberSet.NO_KEY) {
+            if (PhoneNormalizer.toKey(input) != PhoneNumberSet.NO_KEY) {
+                assertEquals(input, PhoneNumberSet.NO_KEY, expected);
+            }
+            return;
+        }
+        assertEquals(input, expected, key);
+    }
+
+    private static String[] randomInputs() {
+        Random random = new Random(42L);
+        String[] inputs = new String[20000];
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < inputs.length; i++) {
+            input.setLength(0);
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            inputs[i] = input.toString();
+        }
+        return inputs;
+    }
+}
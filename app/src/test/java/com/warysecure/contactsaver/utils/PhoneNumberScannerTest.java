@@ -0,0 +1,91 @@
+package com.warysecure.contactsaver.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PhoneNumberScanner must find exactly what the scanner's former
+ * PHONE_PATTERN + replaceAll("[^0-9+]", "") path found.
+ */
+public class PhoneNumberScannerTest {
+    private static final Pattern PHONE_PATTERN = Pattern.compile(PhoneNumberScanner.REFERENCE_PATTERN);
+    private static final String ALPHABET = "0123456789012345678901234567890123456789 +-\t\n\r()./ab\u00A0\u0663";
+
+    private final PhoneNumberScanner scanner = new PhoneNumberScanner();
+
+    @Test
+    public void matchesRegexOnTypicalChatTexts() {
+        assertSameAsRegex("+92 300 1234567");
+        assertSameAsRegex("0300-1234567");
+        assertSameAsRegex("+44 20 7946 0958");
+        assertSameAsRegex("~ +92 321 7654321 Hey there! I am using WhatsApp.");
+        assertSameAsRegex("Call me on 03001234567 or 0321-7654321 after 5:30 pm");
+        assertSameAsRegex("+1 (555) 123-4567");
+        assertSameAsRegex("Order #48213 has been shipped");
+        assertSameAsRegex("Missed voice call");
+    }
+
+    @Test
+    public void matchesRegexOnEdgeInputs() {
+        assertSameAsRegex("");
+        assertSameAsRegex("+");
+        assertSameAsRegex("++923001234567");
+        assertSameAsRegex("1+923001234567");
+        assertSameAsRegex("+-92 300 1234567");
+        assertSameAsRegex("0300  1234567");
+        assertSameAsRegex("0300 1234567 ");
+        assertSameAsRegex("abc03001234567xyz");
+        assertSameAsRegex("12345678901234567890123");
+        assertSameAsRegex("123456789");
+        assertSameAsRegex("1 22 333 4444");
+        assertSameAsRegex("1-2-333-4444");
+        assertSameAsRegex("0300\t123\n4567");
+        assertSameAsRegex("0300\u00A01234567");
+        assertSameAsRegex("\u0660\u0663\u0660\u0660 1234567");
+        assertSameAsRegex("+92 300 1234567+92 300 7654321");
+    }
+
+    @Test
+    public void matchesRegexOnRandomCorpus() {
+        Random random = new Random(42L);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.setLength(0);
+            int length = random.nextInt(48);
+            for (int j = 0; j < length; j++) {
+                text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+            assertSameAsRegex(text.toString());
+        }
+    }
+
+    @Test
+    public void scansCharSequencesWithoutConverting() {
+        StringBuilder text = new StringBuilder("Call +92 300 1234567");
+        scanner.reset(text);
+        assertEquals(true, scanner.find());
+        assertEquals(PhoneNumberSet.encode("+923001234567"), scanner.key());
+        assertFalse(scanner.find());
+    }
+
+    private void assertSameAsRegex(String text) {
+        Matcher matcher = PHONE_PATTERN.matcher(text);
+        scanner.reset(text);
+        while (matcher.find()) {
+            String normalized = matcher.group().replaceAll("[^0-9+]", "");
+            String where = "in \"" + text + "\"";
+            assertEquals("find " + where, true, scanner.find());
+            assertEquals("start " + where, matcher.start(), scanner.start());
+            assertEquals("end " + where, matcher.end(), scanner.end());
+            assertEquals("key " + where, PhoneNumberSet.encode(normalized), scanner.key());
+            assertEquals("digits " + where, normalized.replaceAll("\\+", "").length(), scanner.digitCount());
+        }
+        assertFalse("extra match in \"" + text + "\"", scanner.find());
+    }
+}
@@ -0,0 +1,106 @@
+package com.warysecure.contactsaver.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.warysecure.contactsaver.api.ContactJson;
+import com.warysecure.contactsaver.models.ServerContact;
+import com.warysecure.contactsaver.models.SyncResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON work of a server sync: parsing the pending contacts response
+ * (ApiClient.getPendingContacts), either collected into a list or streamed
+ * one contact at a time, and building the bulk-sync request body
+ * (ApiClient.bulkSync). Run with -prof gc to compare allocation.
+ * treePendingContacts is the parser the app used before streaming, a
+ * JsonObject tree of the whole body, kept here as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ContactJsonBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int contactCount;
+
+    private final Gson gson = new Gson();
+    private String pendingJson;
+    private List<SyncResult> syncResults;
+
+    @Setup
+    public void setUp() {
+        pendingJson = SyntheticData.pendingContactsJson(contactCount);
+        syncResults = SyntheticData.syncResults(contactCount);
+
+        if (ContactJson.parsePendingContacts(pendingJson).size() != contactCount) {
+            throw new IllegalStateException("Synthetic pending payload did not parse");
+        }
+        if (parseTree(gson, pendingJson).size() != contactCount) {
+            throw new IllegalStateException("Tree parser disagrees with the streaming parser");
+        }
+    }
+
+    @Benchmark
+    public List<ServerContact> treePendingContacts() {
+        return parseTree(gson, pendingJson);
+    }
+
+    @Benchmark
+    public List<ServerContact> parsePendingContacts() {
+        return ContactJson.parsePendingContacts(pendingJson);
+    }
+
+    @Benchmark
+    public int streamPendingContacts() throws IOException {
+        int[] count = new int[1];
+        ContactJson.readPendingContacts(new StringReader(pendingJson), contact -> count[0]++);
+        return count[0];
+    }
+
+    @Benchmark
+    public String buildBulkSyncPayload() {
+        return ContactJson.buildBulkSyncPayload(syncResults);
+    }
+
+    /**
+     * The former ContactJson.parsePendingContacts(Gson, String).
+     */
+    private static List<ServerContact> parseTree(Gson gson, String json) {
+        List<ServerContact> contacts = new ArrayList<>();
+        JsonObject obj = gson.fromJson(json, JsonObject.class);
+
+        if (obj.has("success") && obj.get("success").getAsBoolean()) {
+            if (obj.has("contacts")) {
+                JsonArray contactsArray = obj.getAsJsonArray("contacts");
+                for (int i = 0; i < contactsArray.size(); i++) {
+                    JsonObject contactObj = contactsArray.get(i).getAsJsonObject();
+                    ServerContact contact = new ServerContact();
+                    contact.id = contactObj.get("id").getAsInt();
+                    contact.applicationId = contactObj.has("application_id") ? contactObj.get("application_id").getAsInt() : 0;
+                    contact.phone = contactObj.get("phone").getAsString();
+                    contact.name = contactObj.has("name") && !contactObj.get("name").isJsonNull() ? contactObj.get("name").getAsString() : "";
+                    contact.email = contactObj.has("email") && !contactObj.get("email").isJsonNull() ? contactObj.get("email").getAsString() : "";
+                    contact.source = contactObj.has("source") ? contactObj.get("source").getAsString() : "";
+                    contact.createdAt = contactObj.has("created_at") ? contactObj.get("created_at").getAsString() : "";
+                    contacts.add(contact);
+                }
+            }
+        }
+        return contacts;
+    }
+}
@@ -0,0 +1,122 @@
+package com.warysecure.contactsaver.benchmark;
+
+import com.warysecure.contactsaver.utils.PhoneIndex;
+import com.warysecure.contactsaver.utils.PhoneNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duplicate matching in ServerContactSaver: one lookup of a server phone
+ * number against the device's numbers. Half the queries exist on the device
+ * in another format, half do not.
+ *
+ * The linear scans are the ScanAllPhoneMatcher loop without the provider
+ * cursor, once with the original regex and once with PhoneNormalizer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DuplicateMatchBenchmark {
+    private static final int QUERY_COUNT = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int deviceNumberCount;
+
+    private String[] deviceNumbers;
+    private String[] queries;
+    private PhoneIndex index;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        deviceNumbers = SyntheticData.deviceNumbers(deviceNumberCount);
+        index = buildIndex();
+
+        Random random = new Random(SyntheticData.SEED + 1);
+        queries = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            if (i % 2 == 0) {
+                // Same number as the server would send it: no separators, international prefix
+                String digits = deviceNumbers[random.nextInt(deviceNumbers.length)].replaceAll("[^0-9]", "");
+                queries[i] = "+92" + digits.substring(digits.length() - 10);
+            } else {
+                queries[i] = "+1" + (2000000000L + random.nextInt(1000000000));
+            }
+        }
+    }
+
+    @Benchmark
+    public PhoneIndex.Entry linearScanRegex() {
+        String phone = nextQuery();
+        String normalizedPhone = phone.replaceAll("[^+0-9]", "");
+        for (String existingNumber : deviceNumbers) {
+            String normalizedExisting = existingNumber.replaceAll("[^+0-9]", "");
+            if (matches(normalizedExisting, normalizedPhone)) {
+                return new PhoneIndex.Entry("1", null);
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public PhoneIndex.Entry linearScan() {
+        String phone = nextQuery();
+        String normalizedPhone = PhoneNormalizer.normalize(phone);
+        for (String existingNumber : deviceNumbers) {
+            String normalizedExisting = PhoneNormalizer.normalize(existingNumber);
+            if (matches(normalizedExisting, normalizedPhone)) {
+                return new PhoneIndex.Entry("1", null);
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public PhoneIndex.Entry phoneIndexFind() {
+        return index.find(nextQuery());
+    }
+
+    /**
+     * The one-off cost the index pays per sync before its lookups become O(1).
+     */
+    @Benchmark
+    public PhoneIndex phoneIndexBuild() {
+        return buildIndex();
+    }
+
+    private PhoneIndex buildIndex() {
+        PhoneIndex phoneIndex = new PhoneIndex();
+        for (int i = 0; i < deviceNumbers.length; i++) {
+            phoneIndex.put(deviceNumbers[i], new PhoneIndex.Entry(String.valueOf(i), null));
+        }
+        return phoneIndex;
+    }
+
+    private String nextQuery() {
+        String query = queries[next];
+        next = (next + 1) % QUERY_COUNT;
+        return query;
+    }
+
+    private static boolean matches(String normalizedExisting, String normalizedPhone) {
+        if (normalizedExisting.equals(normalizedPhone)) {
+            return true;
+        }
+        if (normalizedExisting.length() >= 10 && normalizedPhone.length() >= 10) {
+            String existingLast10 = normalizedExisting.substring(normalizedExisting.length() - 10);
+            String phoneLast10 = normalizedPhone.substring(normalizedPhone.length() - 10);
+            return existingLast10.equals(phoneLast10);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,146 @@
+package com.warysecure.contactsaver.benchmark;
+
+import com.warysecure.contactsaver.utils.PhoneNormalizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * In-process stand-in for the contacts provider, enough to run copies of
+ * the PhoneMatcher loops on the JVM for LookupStrategyBenchmark. It is no
+ * model of the provider's cost: there is no SQLite and no binder.
+ *
+ * A query copies its result rows into a fresh window, as the provider
+ * fills a CursorWindow for the client, and a Cursor reads columns by
+ * index looked up by name. The filter query mirrors PhoneLookup: the
+ * provider keeps its own index on the last MIN_MATCH digits of every
+ * normalized number and compares only the candidates it finds there.
+ */
+final class FakeContactsProvider {
+    static final String CONTACT_ID = "contact_id";
+    static final String LOOKUP_KEY = "lookup";
+    static final String NUMBER = "data1";
+    static final String RAW_CONTACT_ID = "raw_contact_id";
+    static final String DISPLAY_NAME = "display_name";
+    static final String DISPLAY_NAME_SOURCE = "display_name_source";
+    static final String[] PHONE_COLUMNS = {
+            CONTACT_ID, LOOKUP_KEY, NUMBER, RAW_CONTACT_ID, DISPLAY_NAME, DISPLAY_NAME_SOURCE
+    };
+    static final String[] LOOKUP_COLUMNS = {"_id", LOOKUP_KEY, DISPLAY_NAME, DISPLAY_NAME_SOURCE};
+    // Digits the provider's phone_lookup index is keyed on (PhoneNumberUtils MIN_MATCH)
+    private static final int MIN_MATCH = 7;
+    private static final int STRUCTURED_NAME = 40;
+
+    private final String[][] phoneRows;
+    private final Map<String, List<String[]>> lookupIndex = new HashMap<>();
+
+    /**
+     * A read-only cursor over one query result.
+     */
+    static final class Cursor {
+        private final String[] columns;
+        private final Object[][] window;
+        private int position = -1;
+
+        Cursor(String[] columns, Object[][] window) {
+            this.columns = columns;
+            this.window = window;
+        }
+
+        boolean moveToFirst() {
+            position = 0;
+            return window.length > 0;
+        }
+
+        boolean moveToNext() {
+            return ++position < window.length;
+        }
+
+        int getColumnIndex(String name) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        String getString(int column) {
+            return (String) window[position][column];
+        }
+
+        int getInt(int column) {
+            return Integer.parseInt((String) window[position][column]);
+        }
+
+        void close() {
+        }
+    }
+
+    /**
+     * @param contactCount Number of contacts, one phone number each, in the SyntheticData formats
+     */
+    FakeContactsProvider(int contactCount) {
+        String[] numbers = SyntheticData.deviceNumbers(contactCount);
+        Random random = new Random(SyntheticData.SEED + 2);
+        phoneRows = new String[contactCount][];
+        for (int i = 0; i < contactCount; i++) {
+            String id = String.valueOf(i + 1);
+            String source = String.valueOf(random.nextInt(4) == 0 ? 20 : STRUCTURED_NAME);
+            String[] row = {id, "0r" + id + "-" + Integer.toHexString(random.nextInt()), numbers[i],
+                    String.valueOf(i + 1001), "Contact " + id, source};
+            phoneRows[i] = row;
+
+            String normalized = PhoneNormalizer.normalize(numbers[i]);
+            List<String[]> candidates = lookupIndex.get(minMatch(normalized));
+            if (candidates == null) {
+                candidates = new ArrayList<>(1);
+                lookupIndex.put(minMatch(normalized), candidates);
+            }
+            candidates.add(row);
+        }
+    }
+
+    /**
+     * Phone.CONTENT_URI with the ScanAllPhoneMatcher and snapshot projection: every row.
+     */
+    Cursor queryAllPhones() {
+        Object[][] window = new Object[phoneRows.length][];
+        for (int i = 0; i < phoneRows.length; i++) {
+            window[i] = phoneRows[i].clone();
+        }
+        return new Cursor(PHONE_COLUMNS, window);
+    }
+
+    /**
+     * PhoneLookup.CONTENT_FILTER_URI for one number.
+     */
+    Cursor queryPhoneLookup(String phone) {
+        String normalized = PhoneNormalizer.normalize(phone);
+        List<Object[]> window = new ArrayList<>(1);
+        List<String[]> candidates = lookupIndex.get(minMatch(normalized));
+        if (candidates != null) {
+            for (String[] row : candidates) {
+                if (looselyEqual(PhoneNormalizer.normalize(row[2]), normalized)) {
+                    window.add(new Object[]{row[0], row[1], row[4], row[5]});
+                }
+            }
+        }
+        return new Cursor(LOOKUP_COLUMNS, window.toArray(new Object[0][]));
+    }
+
+    private static String minMatch(String normalized) {
+        return normalized.length() <= MIN_MATCH ? normalized : normalized.substring(normalized.length() - MIN_MATCH);
+    }
+
+    /**
+     * Close to PhoneNumberUtils.compare: the national parts must agree, a
+     * missing country code on one side is ignored.
+     */
+    private static boolean looselyEqual(String a, String b) {
+        if (a.equals(b)) return true;
+        int digits = Math.min(10, Math.min(a.length(), b.length()));
+        return digits >= MIN_MATCH && a.regionMatches(a.length() - digits, b, b.length() - digits, digits);
+    }
+}
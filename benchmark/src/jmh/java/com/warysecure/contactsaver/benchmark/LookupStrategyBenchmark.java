@@ -0,0 +1,174 @@
+package com.warysecure.contactsaver.benchmark;
+
+import com.warysecure.contactsaver.utils.PhoneIndex;
+import com.warysecure.contactsaver.utils.PhoneNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logic microbenchmark of the matching done by the three PhoneMatcher
+ * strategies, on copies of their loops run against a FakeContactsProvider
+ * holding 1k, 10k and 50k contacts. Half the queries exist on the device
+ * in another format, half do not.
+ * - scanAll: the row walk of ScanAllPhoneMatcher
+ * - phoneLookup: the candidate compare behind PhoneLookupMatcher's query
+ * - indexedFind: a PhoneIndex lookup, as IndexedPhoneMatcher does
+ * - indexedLoad: the pass that fills the PhoneIndex, once per sync
+ *
+ * This is not the strategy comparison. The production matchers, the real
+ * provider, SQLite, CursorWindow copies and the binder round trip of every
+ * query are all left out, and those dominate on a device; compare the
+ * strategies there with the matchers themselves. Use these numbers only
+ * for the in-process share of each lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LookupStrategyBenchmark {
+    private static final int QUERY_COUNT = 1024;
+    private static final int STRUCTURED_NAME = 40;
+
+    @Param({"1000", "10000", "50000"})
+    public int contactCount;
+
+    private FakeContactsProvider provider;
+    private PhoneIndex index;
+    private String[] queries;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        provider = new FakeContactsProvider(contactCount);
+        index = loadIndex();
+
+        String[] deviceNumbers = SyntheticData.deviceNumbers(contactCount);
+        Random random = new Random(SyntheticData.SEED + 1);
+        queries = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            if (i % 2 == 0) {
+                // Same number as the server would send it: no separators, international prefix
+                String digits = PhoneNormalizer.normalize(deviceNumbers[random.nextInt(contactCount)]);
+                queries[i] = "+92" + digits.substring(digits.length() - 10);
+            } else {
+                queries[i] = "+1" + (2000000000L + random.nextInt(1000000000));
+            }
+        }
+
+        // Refuse to run copies that do not agree on which numbers exist
+        for (String query : queries) {
+            boolean scanned = scanAll(query) != null;
+            if (scanned != (phoneLookup(query) != null) || scanned != (index.find(query) != null)) {
+                throw new IllegalStateException("Lookup strategies disagree on " + query);
+            }
+        }
+    }
+
+    @Benchmark
+    public PhoneIndex.Entry scanAll() {
+        return scanAll(nextQuery());
+    }
+
+    @Benchmark
+    public PhoneIndex.Entry phoneLookup() {
+        return phoneLookup(nextQuery());
+    }
+
+    @Benchmark
+    public PhoneIndex.Entry indexedFind() {
+        return index.find(nextQuery());
+    }
+
+    @Benchmark
+    public PhoneIndex indexedLoad() {
+        return loadIndex();
+    }
+
+    /**
+     * Copy of the loop of ScanAllPhoneMatcher.find(); keep it in step.
+     */
+    private PhoneIndex.Entry scanAll(String phone) {
+        String normalizedPhone = PhoneNormalizer.normalize(phone);
+        FakeContactsProvider.Cursor cursor = provider.queryAllPhones();
+        try {
+            if (cursor.moveToFirst()) {
+                int numberIndex = cursor.getColumnIndex(FakeContactsProvider.NUMBER);
+                do {
+                    String normalizedExisting = PhoneNormalizer.normalize(cursor.getString(numberIndex));
+                    if (normalizedExisting.equals(normalizedPhone)) {
+                        return readPhoneEntry(cursor);
+                    }
+                    if (normalizedExisting.length() >= 10 && normalizedPhone.length() >= 10) {
+                        String existingLast10 = normalizedExisting.substring(normalizedExisting.length() - 10);
+                        String phoneLast10 = normalizedPhone.substring(normalizedPhone.length() - 10);
+                        if (existingLast10.equals(phoneLast10)) {
+                            return readPhoneEntry(cursor);
+                        }
+                    }
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        return null;
+    }
+
+    /**
+     * Copy of the cursor read of PhoneLookupMatcher.find(); keep it in step.
+     */
+    private PhoneIndex.Entry phoneLookup(String phone) {
+        FakeContactsProvider.Cursor cursor = provider.queryPhoneLookup(phone);
+        try {
+            if (cursor.moveToFirst()) {
+                return new PhoneIndex.Entry(cursor.getString(0), cursor.getString(1), null, cursor.getString(2),
+                        cursor.getInt(3) == STRUCTURED_NAME);
+            }
+        } finally {
+            cursor.close();
+        }
+        return null;
+    }
+
+    /**
+     * Copy of the full load of DeviceContactSnapshot into its PhoneIndex.
+     */
+    private PhoneIndex loadIndex() {
+        PhoneIndex phoneIndex = new PhoneIndex();
+        FakeContactsProvider.Cursor cursor = provider.queryAllPhones();
+        try {
+            if (cursor.moveToFirst()) {
+                int numberIndex = cursor.getColumnIndex(FakeContactsProvider.NUMBER);
+                do {
+                    phoneIndex.put(cursor.getString(numberIndex), readPhoneEntry(cursor));
+                } while (cursor.moveToNext());
+            }
+        } finally {
+            cursor.close();
+        }
+        return phoneIndex;
+    }
+
+    private static PhoneIndex.Entry readPhoneEntry(FakeContactsProvider.Cursor cursor) {
+        return new PhoneIndex.Entry(
+                cursor.getString(cursor.getColumnIndex(FakeContactsProvider.CONTACT_ID)),
+                cursor.getString(cursor.getColumnIndex(FakeContactsProvider.LOOKUP_KEY)),
+                cursor.getString(cursor.getColumnIndex(FakeContactsProvider.RAW_CONTACT_ID)),
+                cursor.getString(cursor.getColumnIndex(FakeContactsProvider.DISPLAY_NAME)),
+                cursor.getInt(cursor.getColumnIndex(FakeContactsProvider.DISPLAY_NAME_SOURCE)) == STRUCTURED_NAME);
+    }
+
+    private String nextQuery() {
+        String query = queries[next];
+        next = (next + 1) % QUERY_COUNT;
+        return query;
+    }
+}
@@ -0,0 +1,117 @@
+package com.warysecure.contactsaver.benchmark;
+
+import com.warysecure.contactsaver.utils.PhoneNormalizer;
+import com.warysecure.contactsaver.utils.PhoneNumberScanner;
+import com.warysecure.contactsaver.utils.PhoneNumberSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Phone number extraction and normalization as done by WhatsAppScannerService,
+ * over the node texts of one synthetic chat list.
+ * The regex variants are the original code and serve as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PhoneExtractionBenchmark {
+    private static final Pattern PHONE_PATTERN = Pattern.compile(PhoneNumberScanner.REFERENCE_PATTERN);
+
+    @Param({"1000", "10000", "100000"})
+    public int nodeCount;
+
+    private String[] texts;
+    private String[] rawNumbers;
+    private final PhoneNumberScanner scanner = new PhoneNumberScanner();
+
+    @Setup
+    public void setUp() {
+        texts = SyntheticData.nodeTexts(nodeCount);
+
+        List<String> matches = new ArrayList<>();
+        for (String text : texts) {
+            Matcher matcher = PHONE_PATTERN.matcher(text);
+            while (matcher.find()) {
+                matches.add(matcher.group());
+            }
+        }
+        rawNumbers = matches.toArray(new String[0]);
+
+        // Refuse to measure a scanner that finds something else than the regex
+        List<Long> regexKeys = new ArrayList<>();
+        List<Long> scannerKeys = new ArrayList<>();
+        for (String text : texts) {
+            Matcher matcher = PHONE_PATTERN.matcher(text);
+            while (matcher.find()) {
+                regexKeys.add(PhoneNumberSet.encode(matcher.group().replaceAll("[^0-9+]", "")));
+            }
+            scanner.reset(text);
+            while (scanner.find()) {
+                scannerKeys.add(scanner.key());
+            }
+        }
+        if (!regexKeys.equals(scannerKeys)) {
+            throw new IllegalStateException("PhoneNumberScanner disagrees with PHONE_PATTERN");
+        }
+    }
+
+    @Benchmark
+    public void regexExtract(Blackhole blackhole) {
+        for (String text : texts) {
+            Matcher matcher = PHONE_PATTERN.matcher(text);
+            while (matcher.find()) {
+                String normalized = matcher.group().replaceAll("[^0-9+]", "");
+                if (normalized.replaceAll("\\+", "").length() >= 10) {
+                    blackhole.consume(normalized);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void scannerExtract(Blackhole blackhole) {
+        for (String text : texts) {
+            scanner.reset(text);
+            while (scanner.find()) {
+                if (scanner.digitCount() >= 10) {
+                    blackhole.consume(scanner.key());
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void regexNormalize(Blackhole blackhole) {
+        for (String number : rawNumbers) {
+            blackhole.consume(number.replaceAll("[^0-9+]", ""));
+        }
+    }
+
+    @Benchmark
+    public void normalizerNormalize(Blackhole blackhole) {
+        for (String number : rawNumbers) {
+            blackhole.consume(PhoneNormalizer.normalize(number));
+        }
+    }
+
+    @Benchmark
+    public void normalizerToKey(Blackhole blackhole) {
+        for (String number : rawNumbers) {
+            blackhole.consume(PhoneNormalizer.toKey(number));
+        }
+    }
+}
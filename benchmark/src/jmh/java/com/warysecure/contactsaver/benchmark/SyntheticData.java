@@ -0,0 +1,121 @@
+package com.warysecure.contactsaver.benchmark;
+
+import com.warysecure.contactsaver.models.SyncResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs shared by the benchmarks.
+ * Every generator takes a fixed seed so runs before and after a change see the same data.
+ */
+final class SyntheticData {
+    static final long SEED = 42L;
+
+    private static final String[] FORMATS = {
+            "+92 %s %s", "+92-%s-%s", "0%s %s", "0%s%s", "+44 %s %s", "%s-%s"
+    };
+    private static final String[] MESSAGES = {
+            "Hey there! I am using WhatsApp.",
+            "Available",
+            "Photo",
+            "Missed voice call",
+            "ok see you at 5:30 tomorrow",
+            "Order #48213 has been shipped",
+            "Typing..."
+    };
+
+    private SyntheticData() {
+    }
+
+    /**
+     * A phone number in one of the formats seen in WhatsApp chat lists.
+     */
+    static String phoneNumber(Random random) {
+        String format = FORMATS[random.nextInt(FORMATS.length)];
+        String prefix = String.valueOf(300 + random.nextInt(50));
+        String line = String.format("%07d", random.nextInt(10000000));
+        return String.format(format, prefix, line);
+    }
+
+    /**
+     * Node texts of a chat list: numbers for unsaved chats, plus names,
+     * message previews and timestamps that contain no number.
+     */
+    static String[] nodeTexts(int count) {
+        Random random = new Random(SEED);
+        String[] texts = new String[count];
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    texts[i] = phoneNumber(random);
+                    break;
+                case 1:
+                    texts[i] = "~ " + phoneNumber(random) + " " + MESSAGES[random.nextInt(MESSAGES.length)];
+                    break;
+                case 2:
+                    texts[i] = MESSAGES[random.nextInt(MESSAGES.length)];
+                    break;
+                default:
+                    texts[i] = (1 + random.nextInt(12)) + ":" + String.format("%02d", random.nextInt(60)) + " pm";
+                    break;
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * A contacts.php?action=pending response body with the given number of contacts.
+     */
+    static String pendingContactsJson(int count) {
+        Random random = new Random(SEED);
+        StringBuilder json = new StringBuilder(count * 180);
+        json.append("{\"success\":true,\"count\":").append(count).append(",\"contacts\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"id\":").append(i + 1)
+                    .append(",\"application_id\":").append(1000 + random.nextInt(9000))
+                    .append(",\"phone\":\"").append(phoneNumber(random)).append('"')
+                    .append(",\"name\":");
+            if (random.nextInt(10) == 0) {
+                json.append("null");
+            } else {
+                json.append("\"Applicant ").append(i).append('"');
+            }
+            json.append(",\"email\":\"applicant").append(i).append("@example.com\"")
+                    .append(",\"source\":\"web_form\"")
+                    .append(",\"created_at\":\"2024-01-15 10:30:00\"}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Sync results as ServerContactSaver produces them, mostly synced.
+     */
+    static List<SyncResult> syncResults(int count) {
+        Random random = new Random(SEED);
+        List<SyncResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(20) == 0) {
+                results.add(new SyncResult(i + 1, null, "failed"));
+            } else {
+                results.add(new SyncResult(i + 1, "0r" + (100000 + i) + "-" + Long.toHexString(random.nextLong()), "synced"));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Raw device numbers as the Phone table stores them.
+     */
+    static String[] deviceNumbers(int count) {
+        Random random = new Random(SEED);
+        String[] numbers = new String[count];
+        for (int i = 0; i < count; i++) {
+            numbers[i] = phoneNumber(random);
+        }
+        return numbers;
+    }
+}